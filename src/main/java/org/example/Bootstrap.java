@@ -1,7 +1,9 @@
 package org.example;
 
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
 import org.example.poll.Poller;
+import org.example.services.DiscoveryRunner;
 import org.example.services.FileSender;
 import org.example.services.FileWriter;
 import org.slf4j.Logger;
@@ -17,7 +19,10 @@ public class Bootstrap
 
     public static void main(String[] args)
     {
-        vertx.deployVerticle(new Server())
+        // HTTP parsing and routing is spread over SERVER_INSTANCES event loops
+        vertx.deployVerticle(Server::new, new DeploymentOptions().setInstances(Constants.SERVER_INSTANCES))
+
+                .compose(result -> vertx.deployVerticle(new DiscoveryRunner()))
 
                 .compose(result -> vertx.deployVerticle(new Scheduler()))
 
@@ -31,7 +36,7 @@ public class Bootstrap
                 {
                     if (result.succeeded())
                     {
-                        logger.info("All verticles deployed successfully: Server, Scheduler, Poller, FileWriter and FileSender");
+                        logger.info("All verticles deployed successfully: Server, DiscoveryRunner, Scheduler, Poller, FileWriter and FileSender");
                     }
                     else
                     {
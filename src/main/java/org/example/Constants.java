@@ -8,6 +8,26 @@ public class Constants
 
     public static final int DB_PORT = 5432;
 
+    public static final int SERVER_INSTANCES = Runtime.getRuntime().availableProcessors(); //Server verticles deployed, each on its own event loop
+
+    public static final int HTTP_COMPRESSION_LEVEL = 6; //gzip/deflate level of API responses, 1 fastest to 9 smallest
+
+    public static final int DISCOVERY_MAX_CONCURRENCY = 10; //Discovery jobs running at once
+
+    public static final int DISCOVERY_QUEUE_SIZE = 100; //Discovery jobs waiting, beyond that a run is refused with 429
+
+    public static final int DISCOVERY_JOB_RETENTION = 600000; //Milliseconds a finished discovery job stays available for status polling
+
+    public static final int RESPONSE_CACHE_SIZE = 10000; //Single resource responses kept encoded for conditional and repeated reads
+
+    public static final int PAGE_SIZE = 100; //Rows of a list page when no limit is given
+
+    public static final int PAGE_MAX_SIZE = 1000;
+
+    public static final int STREAM_PAGE_SIZE = 500; //Rows read per query while streaming a whole table, connection is released between them
+
+    public static final int STATEMENT_CACHE_SIZE = 256; //Prepared statements each database connection keeps
+
     public static final String DB_HOST = "localhost";
 
     public static final String DB_DATABASE = "project";
@@ -32,6 +52,18 @@ public class Constants
 
     public static final String FILE_WRITE = "file.write";
 
+    public static final String FILE_SPILL = "file.spill";
+
+    public static final String CREDENTIAL_CHANGED = "credential.changed"; //Published with profile id when a credential profile is updated or deleted
+
+    public static final String DISCOVERY_RUN = "discovery.run";
+
+    public static final String DISCOVERY_JOB = "discovery.job";
+
+    public static final String DISCOVERY_CHANGED = "discovery.changed"; //Published with discovery id when a run has updated the discovery
+
+    public static final String DIRECT_SEND = "direct.send";
+
     public static final int SNMP_POLL_INTERVAL = 180;
 
     public static final int INTERFACE_POLL_INTERVAL = 210;
@@ -52,13 +84,75 @@ public class Constants
 
     public static final String PLUGIN_PATH = "/home/aakash/Plugin/connection/connection";
 
+    public static final String PLUGIN_WORKER_FLAG = "--worker"; //Starts plugin as a long-lived worker reading requests from stdin
+
+    public static final int PLUGIN_POOL_SIZE = 4;
+
+    public static final int PLUGIN_TIMEOUT = 60; //Seconds a plugin worker gets to answer a request
+
+    public static final int POLL_BATCH_SIZE = 50; //Devices of the same metric group sent to plugin in one request
+
+    public static final int POLL_MAX_CONCURRENCY = 8; //Poll batches Poller runs at once
+
+    public static final int POLL_QUEUE_SIZE = 100; //Admitted batches waiting for a free slot, beyond it batches are refused
+
+    public static final int POLL_RETRY_DELAY = 5000; //Milliseconds before Scheduler retries a refused batch
+
+    public static final int LAST_POLLED_FLUSH_INTERVAL = 10000; //Milliseconds between batched writes of last polled times
+
+    public static final int CREDENTIAL_CACHE_SIZE = 10000; //Credential profiles Scheduler keeps cached
+
+    public static final int CREDENTIAL_CACHE_TTL = 300000; //Milliseconds a cached credential profile is used before it is fetched again
+
+    public static final int POLL_STATS_INTERVAL = 60000;
+
+    public static final int PLUGIN_RESTART_DELAY = 1000; //Milliseconds before a crashed plugin worker is started again
+
+    public static final int PLUGIN_MAX_LINE_BYTES = 8 * 1024 * 1024; //Longest plugin output line (one response or record) that is accepted
+
+    public static final boolean VIRTUAL_THREADS = Boolean.getBoolean("virtual.threads"); //-Dvirtual.threads=true runs blocking probes on virtual threads, needs a JDK 21+ runtime
+
     public static final String IP = "127.0.0.1";
 
     public static final int ZMQ_PORT = 5556;
 
-    public static final int PERIODIC_INTERVAL = 5000;
+    public static final int SCHEDULER_TICK = 500; //Resolution of the scheduler's timing wheel in milliseconds
+
+    public static final int TIMING_WHEEL_SIZE = 512; //With 500 ms ticks one revolution covers every poll interval
+
+    public static final int RECONCILE_INTERVAL = 60000; //Fallback scan for sealed segments the directory watcher missed
+
+    public static final int SEGMENT_MAX_BYTES = 16 * 1024 * 1024; //Active log segment is sealed once it grows past this size
+
+    public static final int SEGMENT_MAX_AGE = 10000; //or once it is older than this many milliseconds
+
+    public static final int INDEX_INTERVAL = 4096; //Bytes of log between two entries of a segment's sparse index
+
+    public static final boolean MAPPED_SEGMENTS = false; //FileSender memory maps sealed segments instead of reading them on heap
+
+    public static final boolean ACKED_TRANSPORT = false; //DEALER/ROUTER transport where checkpoint only moves on collector's acks
+
+    public static final int ACK_WINDOW = 1000; //Records which may be unacknowledged at a time
+
+    public static final int ACK_TIMEOUT = 5000; //Milliseconds without ack progress before the window is resent
+
+    public static final int ACK_RETRIES = 3;
+
+    public static final int ACK_POLL_TIMEOUT = 100; //Milliseconds a single wait for an ack may block
+
+    public static final int BATCH_RECORDS = 1; //Records packed in one ZMQ message, 1 sends every record on its own
+
+    public static final int BATCH_BYTES = 64 * 1024; //Batch is also sent once its records reach this many bytes
+
+    public static final String BATCH_CODEC = "lz4"; //Compression of batch payload: none, deflate or lz4
+
+    public static final boolean DIRECT_PIPELINE = false; //Records go from FileWriter to FileSender in memory, disk only on spill
+
+    public static final int DIRECT_QUEUE_SIZE = 10000;
+
+    public static final int DIRECT_SEND_HWM = 100; //Messages ZMQ holds for the collector in direct mode, past it records spill to the log
 
-    public static final int DATABASE_INTERVAL = 10000;
+    public static final int DIRECT_SEND_TIMEOUT = 200; //Milliseconds a backlog send may wait for the collector in direct mode
 
 
 }
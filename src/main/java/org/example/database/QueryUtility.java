@@ -8,16 +8,24 @@ import io.vertx.pgclient.PgConnectOptions;
 import io.vertx.pgclient.PgPool;
 import io.vertx.sqlclient.PoolOptions;
 import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
 import io.vertx.sqlclient.Tuple;
 import org.example.Bootstrap;
 import org.example.Constants;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class QueryUtility
 {
-    private static QueryUtility instance;
+    //Created eagerly, as every Server instance calls getInstance from its own event loop
+    private static final QueryUtility instance = new QueryUtility();
 
     private QueryUtility()
     {
@@ -26,15 +34,99 @@ public class QueryUtility
 
     public static QueryUtility getInstance()
     {
-        if(instance==null)
-        {
-            instance = new QueryUtility();
-        }
         return instance;
     }
 
     private static PgPool client;
 
+    /*
+     Shape of a statement: operation, table and the columns it binds, given as the caller has them (a key set,
+     a list or a single name). Key sets compare regardless of order, so a lookup needs no sorting or string building.
+    */
+    private static final class StatementKey
+    {
+        private final String operation;
+
+        private final String tableName;
+
+        private final Object columns;
+
+        private final Object filterColumns;
+
+        private final int hash;
+
+        private StatementKey(String operation, String tableName, Object columns, Object filterColumns)
+        {
+            this.operation = operation;
+
+            this.tableName = tableName;
+
+            this.columns = columns;
+
+            this.filterColumns = filterColumns;
+
+            this.hash = 31 * (31 * (31 * operation.hashCode() + tableName.hashCode()) + Objects.hashCode(columns)) + Objects.hashCode(filterColumns);
+        }
+
+        //Key kept in the cache, callers' key sets are live views of their JsonObjects
+        private StatementKey copy()
+        {
+            return new StatementKey(operation, tableName, copyOf(columns), copyOf(filterColumns));
+        }
+
+        private static Object copyOf(Object columns)
+        {
+            if (columns instanceof Set)
+            {
+                return Set.copyOf((Set<?>) columns);
+            }
+
+            return columns instanceof List ? List.copyOf((List<?>) columns) : columns;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            if (!(other instanceof StatementKey))
+            {
+                return false;
+            }
+
+            var key = (StatementKey) other;
+
+            return hash == key.hash && operation.equals(key.operation) && tableName.equals(key.tableName)
+                    && Objects.equals(columns, key.columns) && Objects.equals(filterColumns, key.filterColumns);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    //Generated SQL, with the order in which values of data and filter columns bind to its placeholders
+    private static final class Statement
+    {
+        private final String sql;
+
+        private final List<String> columns;
+
+        private final List<String> filterColumns;
+
+        private Statement(String sql, List<String> columns, List<String> filterColumns)
+        {
+            this.sql = sql;
+
+            this.columns = columns;
+
+            this.filterColumns = filterColumns;
+        }
+    }
+
+    //Calls of same shape share one SQL text and so one prepared statement
+    private static final Map<StatementKey, Statement> statements = new ConcurrentHashMap<>();
+
     static
     {
         // Database connection options
@@ -43,7 +135,9 @@ public class QueryUtility
                 .setHost(Constants.DB_HOST)
                 .setDatabase(Constants.DB_DATABASE)
                 .setUser(Constants.DB_USER)
-                .setPassword(Constants.DB_PASSWORD);
+                .setPassword(Constants.DB_PASSWORD)
+                .setCachePreparedStatements(true)
+                .setPreparedStatementCacheMaxSize(Constants.STATEMENT_CACHE_SIZE);
 
         // Pool options
         PoolOptions poolOptions = new PoolOptions()
@@ -57,27 +151,10 @@ public class QueryUtility
     {
         var promise = Promise.<Long>promise();
 
-        var columns = new StringBuilder();
-
-        var placeholders = new StringBuilder();
-
-        var values = new ArrayList<>();
-
-        data.forEach(entry ->
-        {
-            columns.append(entry.getKey()).append(", ");
-
-            placeholders.append("$").append(values.size() + 1).append(", ");
-
-            values.add(entry.getValue());
-        });
-
-        columns.setLength(columns.length() - 2);
+        var statement = insertStatement(tableName, data.fieldNames());
 
-        placeholders.setLength(placeholders.length() - 2);
-
-        client.preparedQuery("INSERT INTO " + tableName + " (" + columns + ") VALUES (" + placeholders + ") RETURNING *") //* means every column
-                .execute(Tuple.from(values), execute -> {
+        client.preparedQuery(statement.sql) //* means every column
+                .execute(Tuple.from(valuesOf(data, statement.columns)), execute -> {
                     if (execute.succeeded())
                     {
                         var rows = execute.result();
@@ -101,11 +178,108 @@ public class QueryUtility
         return promise.future();
     }
 
+    //Inserts all rows in one round trip, every row must have the same keys. Ids come back in order of rows, null where no row was returned
+    public Future<List<Long>> insertBatch(String tableName, List<JsonObject> rows)
+    {
+        if (rows.isEmpty())
+        {
+            return Future.succeededFuture(List.of());
+        }
+
+        return executeInsertBatch(insertStatement(tableName, rows.get(0).fieldNames()), rows);
+    }
+
+    /*
+     Inserts rows, a row clashing on conflictColumns updates the existing one with its other columns instead.
+     Ids of inserted or updated rows come back in order of rows.
+    */
+    public Future<List<Long>> upsert(String tableName, List<JsonObject> rows, List<String> conflictColumns)
+    {
+        if (rows.isEmpty())
+        {
+            return Future.succeededFuture(List.of());
+        }
+
+        var keys = rows.get(0).fieldNames();
+
+        var statement = statement(new StatementKey("upsert", tableName, keys, conflictColumns), () ->
+        {
+            var insert = insertStatement(tableName, keys);
+
+            var setClause = new StringBuilder();
+
+            for (var column : insert.columns)
+            {
+                if (!conflictColumns.contains(column))
+                {
+                    if (!setClause.isEmpty())
+                    {
+                        setClause.append(", ");
+                    }
+
+                    setClause.append(column).append(" = EXCLUDED.").append(column);
+                }
+            }
+
+            // DO NOTHING would return no row for a clash, so a no-op update keeps ids coming back
+            if (setClause.isEmpty())
+            {
+                setClause.append(conflictColumns.get(0)).append(" = EXCLUDED.").append(conflictColumns.get(0));
+            }
+
+            var sql = insert.sql.replace(" RETURNING *",
+                    " ON CONFLICT (" + String.join(", ", conflictColumns) + ") DO UPDATE SET " + setClause + " RETURNING *");
+
+            return new Statement(sql, insert.columns, List.of());
+        });
+
+        return executeInsertBatch(statement, rows);
+    }
+
+    private Future<List<Long>> executeInsertBatch(Statement statement, List<JsonObject> rows)
+    {
+        var promise = Promise.<List<Long>>promise();
+
+        var batch = new ArrayList<Tuple>(rows.size());
+
+        for (var row : rows)
+        {
+            batch.add(Tuple.from(valuesOf(row, statement.columns)));
+        }
+
+        client.preparedQuery(statement.sql)
+                .executeBatch(batch, execute ->
+                {
+                    if (execute.succeeded())
+                    {
+                        // One row set per tuple, chained through next() in order of tuples. A tuple that returned no row
+                        // gets null, so ids.get(i) always belongs to rows.get(i)
+                        var ids = new ArrayList<Long>(rows.size());
+
+                        for (var result = execute.result(); result != null; result = result.next())
+                        {
+                            ids.add(result.size() > 0 ? result.iterator().next().getLong(0) : null);
+                        }
+
+                        promise.complete(ids);
+                    }
+                    else
+                    {
+                        promise.fail(execute.cause().getMessage());
+                    }
+                });
+
+        return promise.future();
+    }
+
     public Future<Void> delete(String tableName, String column, Long id)
     {
         var promise = Promise.<Void>promise();
 
-        client.preparedQuery("DELETE FROM "+ tableName + " WHERE " + column + " = $1")
+        var statement = statement(new StatementKey("delete", tableName, column, null), () ->
+                new Statement("DELETE FROM "+ tableName + " WHERE " + column + " = $1", List.of(), List.of()));
+
+        client.preparedQuery(statement.sql)
                 .execute(Tuple.of(id), execute ->{
                     if(execute.succeeded())
                     {
@@ -164,30 +338,30 @@ public class QueryUtility
         return promise.future();
     }
 
-    public Future<JsonObject> get(String tableName, List<String> columns, JsonObject filter)
+    //Keyset page, rows with key above after in key order, so a page costs the same wherever it is in the table
+    public Future<RowSet<Row>> getPage(String tableName, String keyColumn, long after, int limit)
     {
-        var promise = Promise.<JsonObject>promise();
+        var statement = statement(new StatementKey("page", tableName, keyColumn, null), () ->
+                new Statement("SELECT * FROM " + tableName + " WHERE " + keyColumn + " > $1 ORDER BY " + keyColumn + " LIMIT $2", List.of(), List.of()));
 
-        var selectClause = columns.isEmpty() ? "*" : String.join(", ", columns);
-
-        var whereClause = new StringBuilder();
+        return client.preparedQuery(statement.sql).execute(Tuple.of(after, limit));
+    }
 
-        var values = new ArrayList<>();
+    public Future<JsonObject> get(String tableName, List<String> columns, JsonObject filter)
+    {
+        var promise = Promise.<JsonObject>promise();
 
-        filter.forEach(entry ->
+        var statement = statement(new StatementKey("get", tableName, columns, filter.fieldNames()), () ->
         {
-            if (!whereClause.isEmpty())
-            {
-                whereClause.append(" AND ");
-            }
+            var selectClause = columns.isEmpty() ? "*" : String.join(", ", columns);
 
-            whereClause.append(entry.getKey()).append(" = $").append(values.size() + 1);
+            var filterColumns = sorted(filter.fieldNames());
 
-            values.add(entry.getValue());
+            return new Statement("SELECT " + selectClause + " FROM " + tableName + " WHERE " + conditions(filterColumns, 1), List.of(), filterColumns);
         });
 
-        client.preparedQuery("SELECT " + selectClause + " FROM " + tableName + " WHERE " + whereClause)
-                .execute(Tuple.from(values), execute ->
+        client.preparedQuery(statement.sql)
+                .execute(Tuple.from(valuesOf(filter, statement.filterColumns)), execute ->
                 {
                     if (execute.succeeded())
                     {
@@ -253,39 +427,14 @@ public class QueryUtility
     {
         var promise = Promise.<Boolean>promise();
 
-        var setClause = new StringBuilder();
-
-        var whereClause = new StringBuilder();
+        var statement = updateStatement(tableName, data.fieldNames(), filter.fieldNames());
 
-        var values = new ArrayList<>();
+        var values = valuesOf(data, statement.columns);
 
-        // Construct the SET clause
-        data.forEach(entry ->
-        {
-            if (!setClause.isEmpty())
-            {
-                setClause.append(", ");
-            }
-
-            setClause.append(entry.getKey()).append(" = $").append(values.size() + 1);
-
-            values.add(entry.getValue());
-        });
-
-        // Construct the WHERE clause
-        filter.forEach(entry ->
-        {
-            if (!whereClause.isEmpty())
-            {
-                whereClause.append(" AND ");
-            }
-            whereClause.append(entry.getKey()).append(" = $").append(values.size() + 1);
-
-            values.add(entry.getValue());
-        });
+        values.addAll(valuesOf(filter, statement.filterColumns));
 
         // Execute the query
-        client.preparedQuery("UPDATE " + tableName + " SET " + setClause + " WHERE " + whereClause)
+        client.preparedQuery(statement.sql)
                 .execute(Tuple.from(values), execute ->
                 {
                     if (execute.succeeded())
@@ -308,4 +457,155 @@ public class QueryUtility
         return promise.future();
     }
 
+    //Same update for many rows in one round trip, every data and every filter object must have the same keys
+    public Future<Integer> updateBatch(String tableName, List<JsonObject> data, List<JsonObject> filters)
+    {
+        var promise = Promise.<Integer>promise();
+
+        if (data.isEmpty())
+        {
+            promise.complete(0);
+
+            return promise.future();
+        }
+
+        var statement = updateStatement(tableName, data.get(0).fieldNames(), filters.get(0).fieldNames());
+
+        var batch = new ArrayList<Tuple>(data.size());
+
+        for (int i = 0; i < data.size(); i++)
+        {
+            var values = valuesOf(data.get(i), statement.columns);
+
+            values.addAll(valuesOf(filters.get(i), statement.filterColumns));
+
+            batch.add(Tuple.from(values));
+        }
+
+        client.preparedQuery(statement.sql)
+                .executeBatch(batch, execute ->
+                {
+                    if (execute.succeeded())
+                    {
+                        // Batch answers with one row set per tuple, chained through next()
+                        var updated = 0;
+
+                        for (var rows = execute.result(); rows != null; rows = rows.next())
+                        {
+                            updated += rows.rowCount();
+                        }
+                        promise.complete(updated);
+                    }
+                    else
+                    {
+                        promise.fail(execute.cause());
+                    }
+                });
+
+        return promise.future();
+    }
+
+    //Statement is built only the first time a shape is seen, a lost race just builds the same SQL twice
+    private static Statement statement(StatementKey key, Supplier<Statement> builder)
+    {
+        var statement = statements.get(key);
+
+        if (statement == null)
+        {
+            statement = builder.get();
+
+            var existing = statements.putIfAbsent(key.copy(), statement);
+
+            if (existing != null)
+            {
+                statement = existing;
+            }
+        }
+        return statement;
+    }
+
+    //Columns of a new statement are sorted, so objects built in different order still share its SQL text
+    private static List<String> sorted(Set<String> keys)
+    {
+        var columns = new ArrayList<>(keys);
+
+        Collections.sort(columns);
+
+        return List.copyOf(columns);
+    }
+
+    private static List<Object> valuesOf(JsonObject object, List<String> columns)
+    {
+        var values = new ArrayList<>(columns.size());
+
+        for (var column : columns)
+        {
+            values.add(object.getValue(column));
+        }
+        return values;
+    }
+
+    //"a = $first AND b = $first+1 ..."
+    private static String conditions(List<String> columns, int firstPlaceholder)
+    {
+        var clause = new StringBuilder();
+
+        for (var column : columns)
+        {
+            if (!clause.isEmpty())
+            {
+                clause.append(" AND ");
+            }
+
+            clause.append(column).append(" = $").append(firstPlaceholder++);
+        }
+        return clause.toString();
+    }
+
+    private static Statement insertStatement(String tableName, Set<String> keys)
+    {
+        return statement(new StatementKey("insert", tableName, keys, null), () ->
+        {
+            var columns = sorted(keys);
+
+            var placeholders = new StringBuilder();
+
+            for (int i = 1; i <= columns.size(); i++)
+            {
+                placeholders.append(i > 1 ? ", $" : "$").append(i);
+            }
+
+            var sql = "INSERT INTO " + tableName + " (" + String.join(", ", columns) + ") VALUES (" + placeholders + ") RETURNING *";
+
+            return new Statement(sql, columns, List.of());
+        });
+    }
+
+    private static Statement updateStatement(String tableName, Set<String> keys, Set<String> filterKeys)
+    {
+        return statement(new StatementKey("update", tableName, keys, filterKeys), () ->
+        {
+            var columns = sorted(keys);
+
+            var filterColumns = sorted(filterKeys);
+
+            var setClause = new StringBuilder();
+
+            var placeholder = 1;
+
+            for (var column : columns)
+            {
+                if (!setClause.isEmpty())
+                {
+                    setClause.append(", ");
+                }
+
+                setClause.append(column).append(" = $").append(placeholder++);
+            }
+
+            var sql = "UPDATE " + tableName + " SET " + setClause + " WHERE " + conditions(filterColumns, placeholder);
+
+            return new Statement(sql, columns, filterColumns);
+        });
+    }
 }
@@ -0,0 +1,272 @@
+package org.example.database;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.temporal.TemporalAccessor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ Writes rows straight into a response Buffer through a Jackson generator, no JsonObject is built per row.
+ Column names are kept as SerializedString, which holds their encoded bytes, so each name is encoded only once.
+ json/jsonb values are written as the JSON they hold, temporal values as their string form.
+*/
+public class RowCodec
+{
+    private static final Logger logger = LoggerFactory.getLogger(RowCodec.class);
+
+    private static final JsonFactory factory = new JsonFactory();
+
+    private static final Map<String, SerializedString> columnNames = new ConcurrentHashMap<>();
+
+    private RowCodec()
+    {
+
+    }
+
+    private static class BufferOutputStream extends OutputStream
+    {
+        private Buffer buffer;
+
+        private BufferOutputStream(Buffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public void write(int b)
+        {
+            buffer.appendByte((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length)
+        {
+            buffer.appendBytes(bytes, offset, length);
+        }
+
+        //Hands out what was written so far and continues in a fresh buffer
+        private Buffer take()
+        {
+            var written = buffer;
+
+            buffer = Buffer.buffer();
+
+            return written;
+        }
+    }
+
+    //Generator appending to buffer, it must be closed (or flushed) before buffer is used
+    public static JsonGenerator generator(Buffer buffer) throws IOException
+    {
+        return factory.createGenerator(new BufferOutputStream(buffer));
+    }
+
+    //Response envelope the routes use, {"status.code", "message", "data": [rows]}
+    public static Buffer encode(int statusCode, String message, Iterable<Row> rows, boolean pretty)
+    {
+        return encode(statusCode, message, rows, null, pretty);
+    }
+
+    //Same envelope for a page of rows, with "next" holding cursor of the following page when there is one
+    public static Buffer encode(int statusCode, String message, Iterable<Row> rows, Long next, boolean pretty)
+    {
+        var buffer = Buffer.buffer();
+
+        try (var generator = generator(buffer))
+        {
+            if (pretty)
+            {
+                generator.useDefaultPrettyPrinter();
+            }
+
+            writeHead(generator, statusCode, message);
+
+            for (var row : rows)
+            {
+                writeRow(generator, row);
+            }
+
+            generator.writeEndArray();
+
+            if (next != null)
+            {
+                generator.writeNumberField("next", next);
+            }
+
+            generator.writeEndObject();
+        }
+        catch (IOException exception)
+        {
+            // Buffer never fails a write, only a bug in the values can get here
+            logger.error("Failed to encode rows: {}", exception.getMessage());
+
+            throw new IllegalStateException(exception);
+        }
+        return buffer;
+    }
+
+    /*
+     Envelope of a list answered over several queries, written out page by page as a chunked response.
+     Each call hands out the bytes written since the previous one, so only one page is held at a time.
+    */
+    public static class ChunkWriter
+    {
+        private final BufferOutputStream target = new BufferOutputStream(Buffer.buffer());
+
+        private final JsonGenerator generator;
+
+        public ChunkWriter(int statusCode, String message, boolean pretty)
+        {
+            try
+            {
+                generator = factory.createGenerator(target);
+
+                if (pretty)
+                {
+                    generator.useDefaultPrettyPrinter();
+                }
+
+                writeHead(generator, statusCode, message);
+            }
+            catch (IOException exception)
+            {
+                throw new IllegalStateException(exception);
+            }
+        }
+
+        //First chunk also carries the envelope's head
+        public Buffer rows(Iterable<Row> rows)
+        {
+            try
+            {
+                for (var row : rows)
+                {
+                    writeRow(generator, row);
+                }
+
+                generator.flush();
+
+                return target.take();
+            }
+            catch (IOException exception)
+            {
+                logger.error("Failed to encode rows: {}", exception.getMessage());
+
+                throw new IllegalStateException(exception);
+            }
+        }
+
+        public Buffer end()
+        {
+            try
+            {
+                generator.writeEndArray();
+
+                generator.writeEndObject();
+
+                generator.close();
+
+                return target.take();
+            }
+            catch (IOException exception)
+            {
+                throw new IllegalStateException(exception);
+            }
+        }
+    }
+
+    private static void writeHead(JsonGenerator generator, int statusCode, String message) throws IOException
+    {
+        generator.writeStartObject();
+
+        generator.writeNumberField("status.code", statusCode);
+
+        generator.writeStringField("message", message);
+
+        generator.writeArrayFieldStart("data");
+    }
+
+    public static void writeRow(JsonGenerator generator, Row row) throws IOException
+    {
+        generator.writeStartObject();
+
+        for (int i = 0; i < row.size(); i++)
+        {
+            generator.writeFieldName(columnNames.computeIfAbsent(row.getColumnName(i), SerializedString::new));
+
+            writeValue(generator, row.getValue(i));
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException
+    {
+        if (value == null)
+        {
+            generator.writeNull();
+        }
+        else if (value instanceof String)
+        {
+            generator.writeString((String) value);
+        }
+        else if (value instanceof Integer || value instanceof Short)
+        {
+            generator.writeNumber(((Number) value).intValue());
+        }
+        else if (value instanceof Long)
+        {
+            generator.writeNumber((Long) value);
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            generator.writeNumber(((Number) value).doubleValue());
+        }
+        else if (value instanceof BigDecimal)
+        {
+            generator.writeNumber((BigDecimal) value);
+        }
+        else if (value instanceof Number)
+        {
+            // pg Numeric and the like, written as they print
+            generator.writeNumber(value.toString());
+        }
+        else if (value instanceof Boolean)
+        {
+            generator.writeBoolean((Boolean) value);
+        }
+        else if (value == Tuple.JSON_NULL)
+        {
+            // json/jsonb column holding a JSON null, unlike a SQL NULL this one is a value
+            generator.writeNull();
+        }
+        else if (value instanceof JsonObject || value instanceof JsonArray)
+        {
+            // json/jsonb columns go out as the JSON they hold
+            generator.writeRawValue(value instanceof JsonObject ? ((JsonObject) value).encode() : ((JsonArray) value).encode());
+        }
+        else if (value instanceof TemporalAccessor)
+        {
+            generator.writeString(value.toString());
+        }
+        else
+        {
+            // Arrays, buffers, UUIDs and the rest, encoded the way JsonObject.encode would
+            generator.writeRawValue(Json.encode(value));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.plugin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/*
+ Splits plugin stdout in lines as bytes arrive, reading it in fixed chunks.
+ A line longer than maxLineBytes is dropped as it is read instead of being held in memory,
+ so a runaway plugin can not exhaust the heap, and onDropped is told right away. Only used by a worker's reader thread.
+*/
+class PluginOutputReader
+{
+    private final InputStream input;
+
+    private final int maxLineBytes;
+
+    private final Runnable onDropped;
+
+    private final byte[] chunk = new byte[8192];
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private int position;
+
+    private int limit;
+
+    private boolean oversized;
+
+    private long droppedLines;
+
+    PluginOutputReader(InputStream input, int maxLineBytes)
+    {
+        this(input, maxLineBytes, () -> {});
+    }
+
+    PluginOutputReader(InputStream input, int maxLineBytes, Runnable onDropped)
+    {
+        this.input = input;
+
+        this.maxLineBytes = maxLineBytes;
+
+        this.onDropped = onDropped;
+    }
+
+    long droppedLines()
+    {
+        return droppedLines;
+    }
+
+    //Returns next line without its line break, null once stream has ended
+    String readLine() throws IOException
+    {
+        while (true)
+        {
+            if (position == limit)
+            {
+                limit = input.read(chunk);
+
+                position = 0;
+
+                if (limit < 0)
+                {
+                    limit = 0;
+
+                    // Unterminated last line is still handed out, unless it was too long
+                    if (oversized)
+                    {
+                        oversized = false;
+
+                        dropped();
+                    }
+                    else if (line.size() > 0)
+                    {
+                        return take();
+                    }
+                    return null;
+                }
+            }
+
+            var start = position;
+
+            while (position < limit && chunk[position] != '\n')
+            {
+                position++;
+            }
+
+            append(start, position - start);
+
+            if (position < limit)
+            {
+                position++; // Line break
+
+                if (oversized)
+                {
+                    oversized = false;
+
+                    dropped();
+
+                    line.reset();
+
+                    continue;
+                }
+                return take();
+            }
+        }
+    }
+
+    private void dropped()
+    {
+        droppedLines++;
+
+        onDropped.run();
+    }
+
+    private void append(int offset, int length)
+    {
+        if (oversized)
+        {
+            return;
+        }
+
+        if (line.size() + length > maxLineBytes)
+        {
+            oversized = true;
+
+            line.reset();
+
+            return;
+        }
+
+        line.write(chunk, offset, length);
+    }
+
+    private String take()
+    {
+        var text = line.toString(StandardCharsets.UTF_8);
+
+        line.reset();
+
+        return text;
+    }
+}
@@ -0,0 +1,102 @@
+package org.example.plugin;
+
+import io.vertx.core.json.JsonObject;
+import org.example.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+//Pool of persistent plugin processes, so a poll or discovery costs a pipe write instead of a process spawn
+public class PluginPool
+{
+    private static PluginPool instance;
+
+    private final List<PluginWorker> workers = new ArrayList<>();
+
+    private final AtomicLong requestId = new AtomicLong();
+
+    private final long timeout; //Milliseconds a request may take
+
+    PluginPool(int size, List<String> command, long timeout)
+    {
+        this.timeout = timeout;
+
+        for (int i = 0; i < size; i++)
+        {
+            var worker = new PluginWorker(i, command);
+
+            worker.start();
+
+            workers.add(worker);
+        }
+    }
+
+    public static synchronized PluginPool getInstance()
+    {
+        if(instance==null)
+        {
+            instance = new PluginPool(Constants.PLUGIN_POOL_SIZE, List.of(Constants.PLUGIN_PATH, Constants.PLUGIN_WORKER_FLAG),
+                    TimeUnit.SECONDS.toMillis(Constants.PLUGIN_TIMEOUT));
+        }
+        return instance;
+    }
+
+    public CompletableFuture<JsonObject> execute(JsonObject request)
+    {
+        return execute(request, null);
+    }
+
+    /*
+     Sends request to least loaded live worker, response fails if plugin doesn't answer within timeout.
+     Records the plugin streams before its final response go to recordHandler, on worker's reader thread.
+    */
+    public CompletableFuture<JsonObject> execute(JsonObject request, Consumer<JsonObject> recordHandler)
+    {
+        PluginWorker selected = null;
+
+        for (var worker : workers)
+        {
+            if (worker.isAlive() && (selected == null || worker.pendingCount() < selected.pendingCount()))
+            {
+                selected = worker;
+            }
+        }
+
+        if (selected == null)
+        {
+            return CompletableFuture.failedFuture(new IllegalStateException("No plugin worker is available"));
+        }
+
+        var worker = selected;
+
+        return worker.send(requestId.incrementAndGet(), request, recordHandler)
+                .orTimeout(timeout, TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) ->
+                {
+                    if (error instanceof TimeoutException)
+                    {
+                        worker.destroyIfHung(timeout);
+                    }
+                });
+    }
+
+    public static synchronized void close()
+    {
+        if (instance != null)
+        {
+            instance.shutdown();
+
+            instance = null;
+        }
+    }
+
+    void shutdown()
+    {
+        workers.forEach(PluginWorker::close);
+    }
+}
@@ -0,0 +1,325 @@
+package org.example.plugin;
+
+import io.vertx.core.json.JsonObject;
+import org.example.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/*
+ One long-lived plugin process, requests go as JSON lines on stdin and responses come back as JSON lines on stdout.
+ A plugin may stream a large answer as several {request.id, record} lines followed by its final response line,
+ each record is handed on as soon as its line is read so the whole answer is never held at once.
+*/
+public class PluginWorker
+{
+    private static final Logger logger = LoggerFactory.getLogger(PluginWorker.class);
+
+    private static class PendingRequest
+    {
+        private final CompletableFuture<JsonObject> response = new CompletableFuture<>();
+
+        private final Consumer<JsonObject> recordHandler;
+
+        private PendingRequest(Consumer<JsonObject> recordHandler)
+        {
+            this.recordHandler = recordHandler;
+        }
+    }
+
+    private static class OutgoingRequest
+    {
+        private final String line;
+
+        private final CompletableFuture<JsonObject> response;
+
+        private OutgoingRequest(String line, CompletableFuture<JsonObject> response)
+        {
+            this.line = line;
+
+            this.response = response;
+        }
+    }
+
+    private final int index;
+
+    private final List<String> command;
+
+    private final Map<Long, PendingRequest> pending = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<OutgoingRequest> outgoing = new LinkedBlockingQueue<>(); //Drained into stdin by writer thread
+
+    private volatile long lastOutput; //When plugin last wrote a line, tells a busy worker from a hung one
+
+    private volatile Process process;
+
+    private volatile BufferedWriter writer;
+
+    private volatile boolean closed;
+
+    PluginWorker(int index, List<String> command)
+    {
+        this.index = index;
+
+        this.command = command;
+
+        // One writer thread for worker's whole life, it writes into stdin of whichever process is current
+        var writerThread = new Thread(this::writeRequests, "plugin-writer-" + index);
+
+        writerThread.setDaemon(true);
+
+        writerThread.start();
+    }
+
+    void start()
+    {
+        if (closed)
+        {
+            return;
+        }
+        try
+        {
+            // Stderr is inherited so plugin logs can never be mistaken for a response line
+            var started = new ProcessBuilder(command)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+
+            writer = new BufferedWriter(new OutputStreamWriter(started.getOutputStream(), StandardCharsets.UTF_8));
+
+            process = started;
+
+            lastOutput = System.currentTimeMillis();
+
+            var reader = new Thread(() -> readResponses(started), "plugin-worker-" + index);
+
+            reader.setDaemon(true);
+
+            reader.start();
+
+            logger.info("Plugin worker {} started with pid {}", index, started.pid());
+        }
+        catch (Exception exception)
+        {
+            logger.error("Failed to start plugin worker {}: {}", index, exception.getMessage());
+
+            restartLater();
+        }
+    }
+
+    boolean isAlive()
+    {
+        var current = process;
+
+        return current != null && current.isAlive();
+    }
+
+    int pendingCount()
+    {
+        return pending.size();
+    }
+
+    CompletableFuture<JsonObject> send(long requestId, JsonObject request, Consumer<JsonObject> recordHandler)
+    {
+        var pendingRequest = new PendingRequest(recordHandler);
+
+        var response = pendingRequest.response;
+
+        pending.put(requestId, pendingRequest);
+
+        //Whatever way request ends (response, timeout or crash) it should not stay in pending map
+        response.whenComplete((result, error) -> pending.remove(requestId));
+
+        // Caller only queues the line, a slow or full pipe blocks the writer thread instead of the event loop
+        outgoing.add(new OutgoingRequest(request.copy().put("request.id", requestId).encode(), response));
+
+        return response;
+    }
+
+    private void writeRequests()
+    {
+        while (!closed)
+        {
+            OutgoingRequest next;
+
+            try
+            {
+                next = outgoing.poll(1, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException exception)
+            {
+                return;
+            }
+
+            if (next == null || next.response.isDone())
+            {
+                continue;
+            }
+            try
+            {
+                var current = writer;
+
+                current.write(next.line);
+
+                current.newLine();
+
+                // Flushed once queue is drained, so a burst of requests goes out in few pipe writes
+                if (outgoing.isEmpty())
+                {
+                    current.flush();
+                }
+            }
+            catch (Exception exception)
+            {
+                next.response.completeExceptionally(new IllegalStateException("Plugin worker " + index + " is not accepting requests", exception));
+            }
+        }
+    }
+
+    //Kills the process once a request timed out and plugin hasn't written anything for as long, reader then restarts it
+    void destroyIfHung(long timeout)
+    {
+        var current = process;
+
+        if (current != null && current.isAlive() && System.currentTimeMillis() - lastOutput >= timeout)
+        {
+            logger.warn("Plugin worker {} gave no output for {} milliseconds, killing it", index, timeout);
+
+            current.destroyForcibly();
+        }
+    }
+
+    private void readResponses(Process started)
+    {
+        try (var input = started.getInputStream())
+        {
+            var reader = new PluginOutputReader(input, Constants.PLUGIN_MAX_LINE_BYTES, this::lineDropped);
+
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                lastOutput = System.currentTimeMillis();
+
+                if (line.isBlank())
+                {
+                    continue;
+                }
+                try
+                {
+                    var response = new JsonObject(line);
+
+                    var request = pending.get(response.getLong("request.id"));
+
+                    if (request == null)
+                    {
+                        // Request already timed out, nobody is waiting for this response
+                        logger.warn("Plugin worker {} answered unknown request {}", index, response.getLong("request.id"));
+
+                        continue;
+                    }
+
+                    if (response.containsKey("record"))
+                    {
+                        if (request.recordHandler != null)
+                        {
+                            request.recordHandler.accept(response.getJsonObject("record"));
+                        }
+                    }
+                    else if (response.containsKey("error"))
+                    {
+                        request.response.completeExceptionally(new RuntimeException(response.getString("error")));
+                    }
+                    else
+                    {
+                        request.response.complete(response);
+                    }
+                }
+                catch (Exception exception)
+                {
+                    logger.error("Plugin worker {} sent an invalid response: {}", index, line);
+                }
+            }
+        }
+        catch (IOException exception)
+        {
+            logger.error("Plugin worker {} output closed: {}", index, exception.getMessage());
+        }
+
+        // Stdout is closed so process is gone, every request still waiting on it has failed
+        var crash = new IllegalStateException("Plugin worker " + index + " exited");
+
+        pending.values().forEach(request -> request.response.completeExceptionally(crash));
+
+        started.destroy();
+
+        if (!closed)
+        {
+            logger.warn("Plugin worker {} exited, restarting", index);
+
+            restartLater();
+        }
+    }
+
+    //Called as soon as a line is dropped, even the last one before plugin hangs or exits. Its request can't be read
+    //from the line, so the oldest pending request, the likeliest owner, fails now instead of by its timeout
+    private void lineDropped()
+    {
+        lastOutput = System.currentTimeMillis();
+
+        logger.error("Plugin worker {} wrote a line over {} bytes, dropped it", index, Constants.PLUGIN_MAX_LINE_BYTES);
+
+        var oldest = pending.keySet().stream().min(Long::compare);
+
+        if (oldest.isPresent())
+        {
+            var request = pending.get(oldest.get());
+
+            if (request != null)
+            {
+                request.response.completeExceptionally(new IllegalStateException(
+                        "Plugin worker " + index + " wrote a response over " + Constants.PLUGIN_MAX_LINE_BYTES + " bytes"));
+            }
+        }
+    }
+
+    private void restartLater()
+    {
+        CompletableFuture.delayedExecutor(Constants.PLUGIN_RESTART_DELAY, TimeUnit.MILLISECONDS).execute(this::start);
+    }
+
+    void close()
+    {
+        closed = true;
+
+        var current = process;
+
+        if (current != null)
+        {
+            try
+            {
+                // Workers exit by themselves once their stdin is closed
+                writer.close();
+
+                if (!current.waitFor(5, TimeUnit.SECONDS))
+                {
+                    current.destroy();
+                }
+            }
+            catch (Exception exception)
+            {
+                current.destroy();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.poll;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import org.example.Constants;
+import org.example.database.QueryUtility;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/*
+ Read-through cache of credential profiles keyed by profile id, bounded to CREDENTIAL_CACHE_SIZE with LRU eviction.
+ Entries expire after CREDENTIAL_CACHE_TTL and are dropped as soon as Credentials routes publish a change.
+ Lookups of a profile still being fetched share that fetch. Not thread safe, owner verticle's context uses it only.
+*/
+public class CredentialCache
+{
+    private static final List<String> COLUMNS = List.of("profile_protocol","user_name","user_password","community","version");
+
+    private static class Entry
+    {
+        private final Future<JsonObject> profile;
+
+        private final long expiresAt;
+
+        private Entry(Future<JsonObject> profile, long expiresAt)
+        {
+            this.profile = profile;
+
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest)
+        {
+            if (size() > Constants.CREDENTIAL_CACHE_SIZE)
+            {
+                evictions++;
+
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final Function<Long, Future<JsonObject>> loader;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    public CredentialCache()
+    {
+        this(profileId -> QueryUtility.getInstance().get(Constants.CREDENTIALS, COLUMNS, new JsonObject().put("profile_id", profileId))
+                .compose(result -> result.containsKey("error")
+                        ? Future.failedFuture(result.getString("error"))
+                        : Future.succeededFuture(result)));
+    }
+
+    CredentialCache(Function<Long, Future<JsonObject>> loader)
+    {
+        this.loader = loader;
+    }
+
+    //Fails when profile doesn't exist or couldn't be fetched, such results are never cached
+    public Future<JsonObject> get(Long profileId)
+    {
+        var now = System.currentTimeMillis();
+
+        var entry = entries.get(profileId);
+
+        if (entry != null && entry.expiresAt > now)
+        {
+            hits++;
+
+            return entry.profile;
+        }
+
+        misses++;
+
+        var profile = loader.apply(profileId);
+
+        var loaded = new Entry(profile, now + Constants.CREDENTIAL_CACHE_TTL);
+
+        entries.put(profileId, loaded);
+
+        // Only drop the entry if it wasn't replaced or invalidated while being fetched
+        profile.onFailure(error -> entries.remove(profileId, loaded));
+
+        return profile;
+    }
+
+    public void invalidate(Long profileId)
+    {
+        entries.remove(profileId);
+    }
+
+    public String stats()
+    {
+        return String.format("size: %d, hits: %d, misses: %d, evictions: %d", entries.size(), hits, misses, evictions);
+    }
+}
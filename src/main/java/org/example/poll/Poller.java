@@ -1,117 +1,140 @@
 package org.example.poll;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.example.Constants;
-import org.example.database.QueryUtility;
+import org.example.plugin.PluginPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.ArrayDeque;
 
 public class Poller extends AbstractVerticle
 {
     private static final Logger logger = LoggerFactory.getLogger(Poller.class);
 
+    private final ArrayDeque<JsonObject> queue = new ArrayDeque<>(); //Admitted batches waiting for a free slot
+
+    private int running;
+
+    private long rejected;
+
     public void start()
     {
-        vertx.eventBus().<JsonObject>consumer(Constants.OBJECT_POLL, message ->
+        vertx.eventBus().<JsonObject>consumer(Constants.OBJECT_POLL, this::admit);
+
+        vertx.setPeriodic(Constants.POLL_STATS_INTERVAL, id ->
+                logger.info("Polls queued: {}, running: {}, rejected: {}", queue.size(), running, rejected));
+    }
+
+    //At most POLL_MAX_CONCURRENCY batches run at once and POLL_QUEUE_SIZE wait, beyond that Scheduler is told to defer
+    private void admit(Message<JsonObject> message)
+    {
+        if (running < Constants.POLL_MAX_CONCURRENCY)
         {
-            var pollingData = message.body();
+            message.reply(null);
 
-            //Fetching credentials of qualified devices
-            var columns = List.of("profile_protocol","user_name","user_password","community","version");
+            run(message.body());
+        }
+        else if (queue.size() < Constants.POLL_QUEUE_SIZE)
+        {
+            message.reply(null);
 
-            //Fetching device details through credential profile ID as that details will also be needed
-            QueryUtility.getInstance().get(Constants.CREDENTIALS,columns,new JsonObject().put("profile_id",pollingData.getLong("credential.profile")))
-                    .onSuccess(deviceInfo->
-                    {
-                        pollingData.put("profile.protocol",deviceInfo.getString("profile_protocol"))
-                                .put("user.name",deviceInfo.getString("user_name"))
-                                .put("user.password",deviceInfo.getString("user_password"))
-                                .put("community",deviceInfo.getString("community"))
-                                .put("version",deviceInfo.getString("version"));
+            queue.add(message.body());
+        }
+        else
+        {
+            rejected++;
 
-                        var timestamp = pollingData.getString("timestamp");
+            message.fail(429, "Poll queue is full");
+        }
+    }
 
-                        //As I don't require these 2 values in plugin , so I am separately passing the timestamp
+    private void run(JsonObject batch)
+    {
+        running++;
 
-                        pollingData.remove("credential.profile");
+        poll(batch).onComplete(done ->
+        {
+            running--;
 
-                        pollingData.remove("timestamp");
+            var next = queue.poll();
 
-                        startPoll(pollingData,timestamp);
-                    })
-                    .onFailure(error ->
-                    {
-                        logger.error("Failed to fetch device details for profile_id: {}. Cause: {}",
-                                pollingData.getLong("credential.profile"), error.getMessage());
-                    });
+            if (next != null)
+            {
+                run(next);
+            }
         });
     }
 
-    private void startPoll(JsonObject pollingData, String timestamp)
+    //Completes once the batch's plugin request is over, whatever its outcome
+    private Future<Void> poll(JsonObject batch)
     {
-        logger.info("Started polling of ip: {}",pollingData.getString("ip"));
+        //Scheduler sends each device with its resolved credentials, so nothing is fetched here
+        return startPoll(new JsonObject()
+                .put("metric.group.name",batch.getString("metric.group.name"))
+                .put("devices",batch.getJsonArray("devices")), batch.getString("timestamp"));
+    }
 
-        vertx.executeBlocking(promise ->
-        {
-            try
-            {
-                // Start the process
-                pollingData.put(Constants.EVENT_TYPE,Constants.POLL);
+    //Whole batch goes to plugin as one request, its result array is then fanned out to FileWriter per device
+    private Future<Void> startPoll(JsonObject pollingData, String timestamp)
+    {
+        var metricGroup = pollingData.getString("metric.group.name");
 
-                Process process = new ProcessBuilder(Constants.PLUGIN_PATH, pollingData.encode())
-                        .redirectErrorStream(true).start();
+        logger.info("Started polling of {} devices for {}",pollingData.getJsonArray("devices").size(),metricGroup);
 
-                // Capture output from the Go executable
-                var output = new String(process.getInputStream().readAllBytes());
+        pollingData.put(Constants.EVENT_TYPE,Constants.POLL);
 
-                if (process.waitFor(60, TimeUnit.SECONDS))
+        // Request goes to an already running plugin worker, no process is spawned per poll.
+        // Devices the plugin streams as separate records are written as they arrive, on this verticle's context
+        var pluginResult = PluginPool.getInstance().execute(pollingData,
+                record -> context.runOnContext(v -> forward(record, metricGroup, timestamp)));
+
+        return Future.fromCompletionStage(pluginResult, context)
+                .onComplete(res ->
                 {
-                    if (process.exitValue() != 0)
+                    if (res.succeeded())
                     {
-                        logger.error("Go executable failed with error: {}", output.trim());
+                        var results = res.result().getJsonArray("result", new JsonArray());
 
-                        promise.fail(new RuntimeException("Polling failed"));
+                        for (int i = 0; i < results.size(); i++)
+                        {
+                            forward(results.getJsonObject(i), metricGroup, timestamp);
+                        }
                     }
                     else
                     {
-                        logger.info("Metrics collected: {}", output.trim());
-
-                        promise.complete(output.trim());
+                        logger.error("Failed to fetch metrics of {} batch. Cause: {}", metricGroup, res.cause().getMessage());
                     }
-                }
-                else
-                {
-                    // Timeout occurred
-                    process.destroy();
-                }
-            }
-            catch (Exception exception)
-            {
-                logger.error("Failed to execute Go executable", exception);
+                })
+                .<Void>mapEmpty()
+                .otherwiseEmpty();
+    }
 
-                promise.fail(exception);
-            }
-        }, false,res ->
+    private void forward(JsonObject result, String metricGroup, String timestamp)
+    {
+        if (result.containsKey("error"))
         {
-            if (res.succeeded())
-            {
-                vertx.eventBus().send(
-                        Constants.FILE_WRITE,
-                        new JsonObject()
-                                .put("ip", pollingData.getString("ip"))
-                                .put("metric.group", pollingData.getString("metric.group.name"))
-                                .put("metrics", res.result())
-                                .put("timestamp", timestamp));
-
-                logger.info("Metrics fetched successfully for ip: {}", pollingData.getString("ip"));
-            }
-            else
-            {
-                logger.error("Failed to fetch metrics for ip: {}", pollingData.getString("ip"));
-            }
-        });
+            logger.error("Failed to fetch metrics for ip: {}. Cause: {}", result.getString("ip"), result.getString("error"));
+
+            return;
+        }
+
+        vertx.eventBus().send(
+                Constants.FILE_WRITE,
+                new JsonObject()
+                        .put("ip", result.getString("ip"))
+                        .put("metric.group", metricGroup)
+                        .put("metrics", result.getValue("metrics"))
+                        .put("timestamp", timestamp));
+
+        logger.info("Metrics fetched successfully for ip: {}", result.getString("ip"));
+    }
+
+    public void stop()
+    {
+        PluginPool.close();
     }
 }
@@ -10,10 +10,13 @@ import org.example.database.QueryUtility;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,7 +24,34 @@ public class Scheduler extends AbstractVerticle
 {
     private static final Logger logger = LoggerFactory.getLogger(Scheduler.class);
 
-    private final Map<Long,JsonObject> pollDevices = new HashMap<>(); //Will contain provisioned devices
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+
+    //Will contain provisioned devices, each with its metric groups and its resolved poll context
+    private final Map<Long,JsonObject> pollDevices = new HashMap<>();
+
+    private final CredentialCache credentials;
+
+    //Bumped whenever a credential profile changes, a fetch of it started before the bump is not applied
+    private final Map<Long, Long> profileGenerations = new HashMap<>();
+
+    //Numbers each addDevice, wheel entries of an earlier registration of the same device are dropped when due
+    private long registrations;
+
+    //Last polled times not yet written, keyed by object and metric group so only the latest one per group is kept
+    private Map<String, JsonObject> lastPolled = new LinkedHashMap<>();
+
+    //Metric groups keyed by their next due time, so a tick only touches the groups which are due
+    private final TimingWheel<JsonObject> schedule = new TimingWheel<>(Constants.SCHEDULER_TICK, Constants.TIMING_WHEEL_SIZE, System.currentTimeMillis());
+
+    public Scheduler()
+    {
+        this(new CredentialCache());
+    }
+
+    Scheduler(CredentialCache credentials)
+    {
+        this.credentials = credentials;
+    }
 
     public void start()
     {
@@ -33,21 +63,21 @@ public class Scheduler extends AbstractVerticle
                 var objectID = object.body().getLong("object_id");
 
                 fetchMetricData(objectID)
-                        .onSuccess(metrics ->
-                        {
-                            var deviceMetrics = new JsonObject()
-                                    .put("device", object.body())
-                                    .put("metrics", metrics);
-
-                            pollDevices.put(objectID, deviceMetrics);
-                        })
+                        .onSuccess(metrics -> addDevice(objectID, object.body(), metrics))
                         .onFailure(err -> logger.error("Failed to fetch {}: {}", objectID, err.getMessage()));
             });
 
+            //Poll contexts built from a changed or deleted credential profile are resolved again
+            vertx.eventBus().<Long>consumer(Constants.CREDENTIAL_CHANGED, message -> refreshProfile(message.body()));
+
+            vertx.setPeriodic(Constants.POLL_STATS_INTERVAL, id -> logger.info("Credential cache {}", credentials.stats()));
+
+            vertx.setPeriodic(Constants.LAST_POLLED_FLUSH_INTERVAL, id -> flushLastPolled());
+
             //Will fetch provisioned devices from database as soon as this verticle deploys
             getDevices()
                     .onComplete(v->
-                            vertx.setPeriodic(Constants.PERIODIC_INTERVAL,id-> checkAndPreparePolling()));
+                            vertx.setPeriodic(Constants.SCHEDULER_TICK,id-> checkAndPreparePolling()));
         }
         catch (Exception exception)
         {
@@ -55,6 +85,37 @@ public class Scheduler extends AbstractVerticle
         }
     }
 
+    /*
+     Registers device and places each of its metric groups on the wheel at the time it is next due.
+     A device provisioned again replaces its earlier registration, whose groups still on the wheel are skipped.
+    */
+    void addDevice(Long objectId, JsonObject device, JsonArray metrics)
+    {
+        var registration = ++registrations;
+
+        pollDevices.put(objectId, new JsonObject()
+                .put("device", device)
+                .put("metrics", metrics)
+                .put("registration", registration));
+
+        refreshContext(objectId);
+
+        for (int i = 0; i < metrics.size(); i++)
+        {
+            var metricData = metrics.getJsonObject(i).put("registration", registration);
+
+            var lastPolled = metricData.getString("last_polled");
+
+            //last_polled is parsed only once here, afterwards next due time is kept on the wheel itself
+            var nextPoll = lastPolled != null
+                    ? LocalDateTime.parse(lastPolled).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                            + metricData.getInteger("metric_poll_time") * 1000L
+                    : System.currentTimeMillis();
+
+            schedule.schedule(metricData, nextPoll);
+        }
+    }
+
     //To fetch provisioned devices present in database
     private Future<Void> getDevices()
     {
@@ -73,14 +134,7 @@ public class Scheduler extends AbstractVerticle
                         var objectId = object.getLong("object_id");
 
                         fetchMetricData(objectId)
-                                .onSuccess(metrics ->
-                                {
-                                    var deviceMetrics = new JsonObject()
-                                            .put("device", object)
-                                            .put("metrics", metrics);
-
-                                    pollDevices.put(objectId, deviceMetrics);
-                                })
+                                .onSuccess(metrics -> addDevice(objectId, object, metrics))
                                 .onFailure(err -> logger.error("Failed to fetch metrics {}: {}", objectId, err.getMessage()));
                     }
 
@@ -94,12 +148,74 @@ public class Scheduler extends AbstractVerticle
         return promise.future();
     }
 
+    /*
+     Resolves everything plugin needs to poll the device, so object.poll messages are self-contained.
+     Context is built once and never changed afterwards, a credential change replaces it as a whole.
+     A fetch is applied only if the device wasn't provisioned again and its profile didn't change meanwhile,
+     otherwise it could put back an old profile over the one the newer refresh resolves.
+    */
+    private void refreshContext(Long objectId)
+    {
+        var deviceMetrics = pollDevices.get(objectId);
+
+        var device = deviceMetrics.getJsonObject("device");
+
+        var profileId = device.getLong("credential_profile");
+
+        var generation = profileGenerations.getOrDefault(profileId, 0L);
+
+        credentials.get(profileId)
+                .onSuccess(profile ->
+                {
+                    if (isCurrent(objectId, deviceMetrics, profileId, generation))
+                    {
+                        deviceMetrics.put("context", new JsonObject()
+                                .put("ip", device.getString("ip"))
+                                .put("device_type", device.getString("device_type"))
+                                .put("profile.protocol", profile.getString("profile_protocol"))
+                                .put("user.name", profile.getString("user_name"))
+                                .put("user.password", profile.getString("user_password"))
+                                .put("community", profile.getString("community"))
+                                .put("version", profile.getString("version")));
+                    }
+                })
+                .onFailure(error ->
+                {
+                    if (isCurrent(objectId, deviceMetrics, profileId, generation))
+                    {
+                        logger.error("Failed to resolve credential profile {} of object {}: {}", profileId, objectId, error.getMessage());
+
+                        deviceMetrics.remove("context");
+                    }
+                });
+    }
+
+    private boolean isCurrent(Long objectId, JsonObject deviceMetrics, Long profileId, long generation)
+    {
+        return pollDevices.get(objectId) == deviceMetrics && profileGenerations.getOrDefault(profileId, 0L) == generation;
+    }
+
+    void refreshProfile(Long profileId)
+    {
+        profileGenerations.merge(profileId, 1L, Long::sum);
+
+        credentials.invalidate(profileId);
+
+        pollDevices.forEach((objectId, deviceMetrics) ->
+        {
+            if (profileId.equals(deviceMetrics.getJsonObject("device").getLong("credential_profile")))
+            {
+                refreshContext(objectId);
+            }
+        });
+    }
+
     private Future<JsonArray> fetchMetricData(Long objectId)
     {
         var promise = Promise.<JsonArray>promise();
         // Fetch all rows from the 'metric_object' table for the given object_id
 
-        var metricColumns = List.of("metric_group_name", "metric_poll_time", "last_polled");
+        var metricColumns = List.of("metric_object", "metric_group_name", "metric_poll_time", "last_polled");
 
         QueryUtility.getInstance().get(Constants.METRICS,metricColumns,new JsonObject().put("metric_object",objectId))
                 .onSuccess(metric->
@@ -118,85 +234,146 @@ public class Scheduler extends AbstractVerticle
         return promise.future();
     }
 
-    private void checkAndPreparePolling()
+    void checkAndPreparePolling()
     {
         if(pollDevices.isEmpty())
         {
-            logger.info("No provisioned devices currently");
-
             return;
         }
-        for (Map.Entry<Long, JsonObject> entry : pollDevices.entrySet())
-        {
-            var deviceMetrics = entry.getValue();
 
-            var device = deviceMetrics.getJsonObject("device");
+        var currentMillis = System.currentTimeMillis();
+
+        //Due groups are batched per device type and metric group, as one plugin request can poll a whole batch
+        var batches = new HashMap<String, JsonObject>();
 
-            var metrics = deviceMetrics.getJsonArray("metrics");
+        var batchMetrics = new HashMap<String, List<JsonObject>>();
 
-            for (int i = 0; i < metrics.size(); i++)
+        for (var metricData : schedule.advance(currentMillis))
+        {
+            var deviceMetrics = pollDevices.get(metricData.getLong("metric_object"));
+
+            //Groups of a replaced registration leave the wheel here
+            if (deviceMetrics != null && deviceMetrics.getLong("registration").equals(metricData.getLong("registration")))
             {
-                var metricData = metrics.getJsonObject(i);
+                var pollContext = deviceMetrics.getJsonObject("context");
+
+                if (pollContext == null)
+                {
+                    //Credentials couldn't be resolved yet, group waits and resolving is tried again
+                    schedule.schedule(metricData, currentMillis + Constants.POLL_RETRY_DELAY);
+
+                    refreshContext(metricData.getLong("metric_object"));
+
+                    continue;
+                }
+
+                var device = deviceMetrics.getJsonObject("device");
+
+                var metricGroup = metricData.getString("metric_group_name");
+
+                var batchKey = device.getString("device_type") + ":" + metricGroup;
+
+                var batch = batches.computeIfAbsent(batchKey, key -> new JsonObject()
+                        .put("metric.group.name", metricGroup)
+                        .put("timestamp", currentMillis/1000)
+                        .put("devices", new JsonArray()));
 
-                preparePolling(device, metricData);
+                var devices = batch.getJsonArray("devices").add(pollContext);
+
+                batchMetrics.computeIfAbsent(batchKey, key -> new ArrayList<>()).add(metricData);
+
+                if (devices.size() >= Constants.POLL_BATCH_SIZE)
+                {
+                    preparePolling(batches.remove(batchKey), batchMetrics.remove(batchKey), currentMillis);
+                }
             }
         }
+
+        batches.forEach((batchKey, batch) -> preparePolling(batch, batchMetrics.get(batchKey), currentMillis));
     }
 
-    private void preparePolling(JsonObject objectData, JsonObject metricData)
+    //Metric groups go back on the wheel only once Poller answered, a refused batch is retried after POLL_RETRY_DELAY
+    private void preparePolling(JsonObject batch, List<JsonObject> metrics, long currentMillis)
     {
-        try
-        {
-            var pollTime = metricData.getInteger("metric_poll_time") * 1000L; // To convert to milliseconds
+        vertx.eventBus().request(Constants.OBJECT_POLL, batch)
+                .onComplete(admission ->
+                {
+                    if (admission.succeeded())
+                    {
+                        logger.info("Polling triggered for {} devices of {}", metrics.size(), batch.getString("metric.group.name"));
 
-            var lastPolled = metricData.getString("last_polled") != null
-                    ? LocalDateTime.parse(metricData.getString("last_polled"), DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"))
-                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
-                    : null;
+                        for (var metricData : metrics)
+                        {
+                            updateLastPolled(metricData, currentMillis);
 
-            var currentMillis = System.currentTimeMillis();
+                            schedule.schedule(metricData, currentMillis + metricData.getInteger("metric_poll_time") * 1000L);
+                        }
+                    }
+                    else
+                    {
+                        logger.warn("Polling of {} devices of {} deferred: {}", metrics.size(), batch.getString("metric.group.name"), admission.cause().getMessage());
 
-            if (lastPolled == null || currentMillis - lastPolled >= pollTime)
-            {
-                vertx.eventBus().send(Constants.OBJECT_POLL, new JsonObject()
-                        .put("credential.profile", objectData.getLong("credential_profile"))
-                        .put("ip", objectData.getString("ip"))
-                                .put("device_type",objectData.getString("device_type"))
-                        .put("metric.group.name", metricData.getString("metric_group_name"))
-                        .put("timestamp",currentMillis/1000));
+                        var retryAt = System.currentTimeMillis() + Constants.POLL_RETRY_DELAY;
 
-                logger.info("Polling triggered for {} at {}", objectData.getString("hostname"), objectData.getString("ip"));
+                        metrics.forEach(metricData -> schedule.schedule(metricData, retryAt));
+                    }
+                });
+    }
 
-                // Update the last polled time in the hashmap
+    private void updateLastPolled(JsonObject metricData, long currentMillis)
+    {
+        // Update the last polled time in the hashmap, database gets it with the next flush
 
-                var currentTime = LocalDateTime.now();
+        var currentTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(currentMillis), ZoneId.systemDefault()).withNano(0);
 
-                metricData.put("last_polled", currentTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss")));
+        metricData.put("last_polled", currentTime.format(FORMATTER));
 
-                // Update metric group name which got polled and last polled time in the database
+        lastPolled.put(metricData.getLong("metric_object") + ":" + metricData.getString("metric_group_name"), new JsonObject()
+                .put("metric_object", metricData.getLong("metric_object"))
+                .put("metric_group_name", metricData.getString("metric_group_name"))
+                .put("last_polled", currentTime));
+    }
 
-                QueryUtility.getInstance().update(Constants.METRICS, new JsonObject().put("last_polled", currentTime),
-                                        new JsonObject().put("metric_group_name",metricData.getString("metric_group_name")).put("metric_object", objectData.getLong("object_id")))
-                        .onSuccess(updated ->
-                        {
-                            if (updated)
-                            {
-                                logger.info("Last polled time updated for object ID : {}", objectData.getLong("object_id"));
-                            }
-                        })
-                        .onFailure(error ->
-                        {
-                            logger.error("Failed to update last polled time for object ID : {} - {}", objectData.getLong("object_id"), error.getMessage());
-                        });
-            }
-            else
-            {
-                logger.info("Finding qualified devices to proceed for polling");
-            }
-        }
-        catch (Exception exception)
+    //Writes all buffered last polled times as one batched update, on failure they are kept for the next flush
+    private Future<Void> flushLastPolled()
+    {
+        if (lastPolled.isEmpty())
         {
-            logger.error(exception.getMessage(),exception);
+            return Future.succeededFuture();
         }
+
+        var flushed = lastPolled;
+
+        lastPolled = new LinkedHashMap<>();
+
+        var data = new ArrayList<JsonObject>(flushed.size());
+
+        var filters = new ArrayList<JsonObject>(flushed.size());
+
+        flushed.values().forEach(entry ->
+        {
+            data.add(new JsonObject().put("last_polled", entry.getValue("last_polled")));
+
+            filters.add(new JsonObject()
+                    .put("metric_group_name", entry.getString("metric_group_name"))
+                    .put("metric_object", entry.getLong("metric_object")));
+        });
+
+        return QueryUtility.getInstance().updateBatch(Constants.METRICS, data, filters)
+                .onSuccess(updated -> logger.info("Last polled time updated for {} metric groups", updated))
+                .onFailure(error ->
+                {
+                    logger.error("Failed to update last polled time of {} metric groups: {}", flushed.size(), error.getMessage());
+
+                    // Newer times recorded meanwhile win over the ones which failed
+                    flushed.forEach(lastPolled::putIfAbsent);
+                })
+                .mapEmpty();
+    }
+
+    @Override
+    public void stop(Promise<Void> stopPromise)
+    {
+        flushLastPolled().onComplete(done -> stopPromise.complete());
     }
 }
@@ -0,0 +1,112 @@
+package org.example.poll;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+//Hashed timing wheel, entries are placed in the slot of their due tick so advancing only touches the slots that elapsed
+public class TimingWheel<T>
+{
+    private static class Entry<T>
+    {
+        private final T item;
+
+        private final long tick; //Absolute tick in which this entry becomes due
+
+        private Entry(T item, long tick)
+        {
+            this.item = item;
+
+            this.tick = tick;
+        }
+    }
+
+    private final long tickMillis;
+
+    private final List<LinkedList<Entry<T>>> slots;
+
+    private long currentTick;
+
+    private int size;
+
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis)
+    {
+        if (tickMillis <= 0 || wheelSize <= 0)
+        {
+            throw new IllegalArgumentException("Tick duration and wheel size must be positive");
+        }
+
+        this.tickMillis = tickMillis;
+
+        this.slots = new ArrayList<>(wheelSize);
+
+        for (int i = 0; i < wheelSize; i++)
+        {
+            slots.add(new LinkedList<>());
+        }
+
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    //Schedules item at given epoch millis, anything already overdue goes into the next tick
+    public void schedule(T item, long deadlineMillis)
+    {
+        //Rounding up so an item never fires before its deadline
+        var tick = Math.max((deadlineMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+
+        slots.get((int) (tick % slots.size())).add(new Entry<>(item, tick));
+
+        size++;
+    }
+
+    //Moves the wheel up to nowMillis and returns every item that became due on the way
+    public List<T> advance(long nowMillis)
+    {
+        var due = new ArrayList<T>();
+
+        var targetTick = nowMillis / tickMillis;
+
+        //No need to spin more than one revolution, every slot would have been visited once by then
+        var ticks = Math.min(targetTick - currentTick, slots.size());
+
+        for (long i = 0; i < ticks; i++)
+        {
+            var slot = slots.get((int) ((targetTick - ticks + 1 + i) % slots.size()));
+
+            Iterator<Entry<T>> iterator = slot.iterator();
+
+            while (iterator.hasNext())
+            {
+                var entry = iterator.next();
+
+                //Entries of later revolutions share this slot, they stay until their own tick comes
+                if (entry.tick <= targetTick)
+                {
+                    iterator.remove();
+
+                    size--;
+
+                    due.add(entry.item);
+                }
+            }
+        }
+
+        if (targetTick > currentTick)
+        {
+            currentTick = targetTick;
+        }
+
+        return due;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+}
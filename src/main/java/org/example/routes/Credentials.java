@@ -1,6 +1,7 @@
 package org.example.routes;
 
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import org.example.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +15,13 @@ import java.util.List;
 public class Credentials implements CrudOperations
 {
     private static final Logger logger = LoggerFactory.getLogger(Credentials.class);
+
+    private final Vertx vertx;
+
+    public Credentials(Vertx vertx)
+    {
+        this.vertx = vertx;
+    }
     
     public void route(Router credentialRouter) 
     {
@@ -49,11 +57,9 @@ public class Credentials implements CrudOperations
 
             if(name == null || name.isEmpty() || protocol == null || protocol.isEmpty())
             {
-                context.response()
-                        .setStatusCode(500)
-                        .end(new JsonObject()
-                                .put("status.code",500)
-                                .put("message","Please enter both username and protocol").encodePrettily());
+                Responses.send(context, 500, new JsonObject()
+                        .put("status.code",500)
+                        .put("message","Please enter both username and protocol"));
 
                 return;
             }
@@ -67,12 +73,9 @@ public class Credentials implements CrudOperations
 
                 if (userName == null || userName.isEmpty() || userPassword == null || userPassword.isEmpty())
                 {
-                    context.response()
-                            .setStatusCode(500)
-                            .end(new JsonObject()
-                                    .put("status.code", 500)
-                                    .put("message", "For SSH protocol, both user.name and user.password are required")
-                                    .encodePrettily());
+                    Responses.send(context, 500, new JsonObject()
+                            .put("status.code", 500)
+                            .put("message", "For SSH protocol, both user.name and user.password are required"));
                     return;
                 }
             }
@@ -84,24 +87,18 @@ public class Credentials implements CrudOperations
 
                 if (community == null || community.isEmpty() || version == null || version.isEmpty())
                 {
-                    context.response()
-                            .setStatusCode(500)
-                            .end(new JsonObject()
-                                    .put("status.code", 500)
-                                    .put("message", "For SNMP protocol, both community and version are required")
-                                    .encodePrettily());
+                    Responses.send(context, 500, new JsonObject()
+                            .put("status.code", 500)
+                            .put("message", "For SNMP protocol, both community and version are required"));
                     return;
                 }
             }
             else
             {
                 // Invalid protocol
-                context.response()
-                        .setStatusCode(500)
-                        .end(new JsonObject()
-                                .put("status.code", 500)
-                                .put("message", "Unsupported protocol: " + protocol)
-                                .encodePrettily());
+                Responses.send(context, 500, new JsonObject()
+                        .put("status.code", 500)
+                        .put("message", "Unsupported protocol: " + protocol));
                 return;
             }
 
@@ -134,35 +131,31 @@ public class Credentials implements CrudOperations
                         {
                             var profileId = result.result();
 
+                            ResponseCache.bump(ResponseCache.key(Constants.CREDENTIALS, profileId));
+
                             var response = new JsonObject()
                                     .put("credential.profile.id", profileId);
                             
-                            context.response()
-                                    .setStatusCode(201)
-                                    .end(new JsonObject()
-                                            .put("status.code",201)
-                                            .put("message","Credential profile created successfully")
-                                            .put("data",response).encodePrettily());
+                            Responses.send(context, 201, new JsonObject()
+                                    .put("status.code",201)
+                                    .put("message","Credential profile created successfully")
+                                    .put("data",response));
                         }
                         else
                         {
-                            context.response()
-                                    .setStatusCode(500)
-                                    .end(new JsonObject()
-                                            .put("status.code",500)
-                                            .put("message","Failed to create credential profile")
-                                            .put("error",result.cause().getMessage()).encodePrettily());
+                            Responses.send(context, 500, new JsonObject()
+                                    .put("status.code",500)
+                                    .put("message","Failed to create credential profile")
+                                    .put("error",result.cause().getMessage()));
                         }
                     });
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in creating credential profile")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Server error in creating credential profile")
+                    .put("error",exception.getCause().getMessage()));
         }
     }
 
@@ -181,11 +174,9 @@ public class Credentials implements CrudOperations
 
         if(name == null || name.isEmpty() || protocol == null || protocol.isEmpty() || credentialID == null || credentialID.isEmpty())
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Please enter all the details of credentialID , username and protocol").encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Please enter all the details of credentialID , username and protocol"));
             return;
         }
         // Validate protocol-specific fields
@@ -197,12 +188,9 @@ public class Credentials implements CrudOperations
 
             if (userName == null || userName.isEmpty() || userPassword == null || userPassword.isEmpty())
             {
-                context.response()
-                        .setStatusCode(500)
-                        .end(new JsonObject()
-                                .put("status.code", 500)
-                                .put("message", "For SSH protocol, both user.name and user.password are required")
-                                .encodePrettily());
+                Responses.send(context, 500, new JsonObject()
+                        .put("status.code", 500)
+                        .put("message", "For SSH protocol, both user.name and user.password are required"));
                 return;
             }
         }
@@ -214,24 +202,18 @@ public class Credentials implements CrudOperations
 
             if (community == null || community.isEmpty() || version == null || version.isEmpty())
             {
-                context.response()
-                        .setStatusCode(500)
-                        .end(new JsonObject()
-                                .put("status.code", 500)
-                                .put("message", "For SNMP protocol, both community and version are required")
-                                .encodePrettily());
+                Responses.send(context, 500, new JsonObject()
+                        .put("status.code", 500)
+                        .put("message", "For SNMP protocol, both community and version are required"));
                 return;
             }
         }
         else
         {
             // Invalid protocol
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code", 500)
-                            .put("message", "Unsupported protocol: " + protocol)
-                            .encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code", 500)
+                    .put("message", "Unsupported protocol: " + protocol));
             return;
         }
         try
@@ -251,42 +233,38 @@ public class Credentials implements CrudOperations
                     {
                         if(result.succeeded())
                         {
-                            context.response()
-                                    .setStatusCode(200)
-                                    .end(new JsonObject()
-                                            .put("status.code",200)
-                                            .put("message","Credential profile updated successfully").encodePrettily());
+                            ResponseCache.bump(ResponseCache.key(Constants.CREDENTIALS, id));
+
+                            vertx.eventBus().publish(Constants.CREDENTIAL_CHANGED, id);
+
+                            Responses.send(context, 200, new JsonObject()
+                                    .put("status.code",200)
+                                    .put("message","Credential profile updated successfully"));
                         }
                         else
                         {
                             if (result.cause().getMessage().contains("No matching rows found"))
                             {
-                                context.response()
-                                        .setStatusCode(404)
-                                        .end(new JsonObject()
-                                                .put("status.code",404)
-                                                .put("message","Credential profile not found of this ID").encodePrettily());
+                                Responses.send(context, 404, new JsonObject()
+                                        .put("status.code",404)
+                                        .put("message","Credential profile not found of this ID"));
                             }
                             else
                             {
-                                context.response()
-                                        .setStatusCode(500)
-                                        .end(new JsonObject()
-                                                .put("status.code",500)
-                                                .put("message","Database error while updating credential profile")
-                                                .put("error",result.cause().getMessage()).encodePrettily());
+                                Responses.send(context, 500, new JsonObject()
+                                        .put("status.code",500)
+                                        .put("message","Database error while updating credential profile")
+                                        .put("error",result.cause().getMessage()));
                             }
                         }
                     });
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in updating credential profile")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Server error in updating credential profile")
+                    .put("error",exception.getCause().getMessage()));
         }
     }
 
@@ -298,11 +276,9 @@ public class Credentials implements CrudOperations
 
         if (credentialID == null || credentialID.isEmpty())
         {
-            context.response()
-                    .setStatusCode(404)
-                    .end(new JsonObject()
-                            .put("status.code", 404)
-                            .put("message", "Please enter a valid credential ID").encodePrettily());
+            Responses.send(context, 404, new JsonObject()
+                    .put("status.code", 404)
+                    .put("message", "Please enter a valid credential ID"));
             return;
         }
         try
@@ -313,30 +289,28 @@ public class Credentials implements CrudOperations
                     .onComplete(result ->
                     {
                         if (result.succeeded()) {
-                            context.response()
-                                    .setStatusCode(200)
-                                    .end(new JsonObject()
-                                            .put("status.code", 200)
-                                            .put("message", "Credential profile deleted successfully").encodePrettily());
+                            ResponseCache.bump(ResponseCache.key(Constants.CREDENTIALS, id));
+
+                            vertx.eventBus().publish(Constants.CREDENTIAL_CHANGED, id);
+
+                            Responses.send(context, 200, new JsonObject()
+                                    .put("status.code", 200)
+                                    .put("message", "Credential profile deleted successfully"));
                         }
                         else
                         {
                             if (result.cause().getMessage().contains("Information not found"))
                             {
-                                context.response()
-                                        .setStatusCode(404)
-                                        .end(new JsonObject()
-                                                .put("status.code", 404)
-                                                .put("message", "Credential profile not found for this ID").encodePrettily());
+                                Responses.send(context, 404, new JsonObject()
+                                        .put("status.code", 404)
+                                        .put("message", "Credential profile not found for this ID"));
                             }
                             else
                             {
-                                context.response()
-                                        .setStatusCode(500)
-                                        .end(new JsonObject()
-                                                .put("status.code", 500)
-                                                .put("message", "Database error while deleting credential profile")
-                                                .put("error", result.cause().getMessage()).encodePrettily());
+                                Responses.send(context, 500, new JsonObject()
+                                        .put("status.code", 500)
+                                        .put("message", "Database error while deleting credential profile")
+                                        .put("error", result.cause().getMessage()));
                             }
                         }
                     });
@@ -344,12 +318,10 @@ public class Credentials implements CrudOperations
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code", 500)
-                            .put("message", "Server error in deleting credential profile")
-                            .put("error", "Please enter a valid credential profile ID").encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code", 500)
+                    .put("message", "Server error in deleting credential profile")
+                    .put("error", "Please enter a valid credential profile ID"));
         }
     }
 
@@ -362,11 +334,9 @@ public class Credentials implements CrudOperations
 
         if (credentialID == null || credentialID.isEmpty())
         {
-            context.response()
-                    .setStatusCode(404)
-                    .end(new JsonObject()
-                            .put("status.code", 404)
-                            .put("message", "Please enter a valid credential ID").encodePrettily());
+            Responses.send(context, 404, new JsonObject()
+                    .put("status.code", 404)
+                    .put("message", "Please enter a valid credential ID"));
             return;
         }
         try
@@ -375,48 +345,47 @@ public class Credentials implements CrudOperations
 
             var columns = List.of("profile_name", "profile_protocol", "user_name","user_password","community","version");
 
+            // Unchanged resource is answered from memory, with 304 when client already has it
+            var key = ResponseCache.key(Constants.CREDENTIALS, id);
+
+            if (ResponseCache.serve(context, key))
+            {
+                return;
+            }
+
+            var version = ResponseCache.version(key);
+
             QueryUtility.getInstance().get(Constants.CREDENTIALS,columns,new JsonObject().put("profile_id",id))
                     .onComplete(result->
                     {
-                        if(result.succeeded())
+                        if(result.failed())
+                        {
+                            Responses.send(context, 500, new JsonObject()
+                                    .put("status.code",500)
+                                    .put("message","Database error while fetching credential profile")
+                                    .put("error",result.cause().getMessage()));
+                        }
+                        else if (result.result().containsKey("error"))
                         {
-                            context.response()
-                                    .setStatusCode(200)
-                                    .end(new JsonObject()
-                                            .put("status.code",200)
-                                            .put("message","Credential profile fetched successfully")
-                                            .put("data",result.result()).encodePrettily());
+                            Responses.send(context, 404, new JsonObject()
+                                    .put("status.code",404)
+                                    .put("message","Credential profile not found of this ID"));
                         }
                         else
                         {
-                            if (result.result().containsKey("error"))
-                            {
-                                context.response()
-                                        .setStatusCode(404)
-                                        .end(new JsonObject()
-                                                .put("status.code",404)
-                                                .put("message","Credential profile not found of this ID").encodePrettily());
-                            }
-                            else
-                            {
-                                context.response()
-                                        .setStatusCode(500)
-                                        .end(new JsonObject()
-                                                .put("status.code",500)
-                                                .put("message","Database error while fetching credential profile")
-                                                .put("error",result.cause().getMessage()).encodePrettily());
-                            }
+                            ResponseCache.send(context, key, version, new JsonObject()
+                                    .put("status.code",200)
+                                    .put("message","Credential profile fetched successfully")
+                                    .put("data",result.result()));
                         }
                     });
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code", 500)
-                            .put("message", "Server error in fetching credential profile")
-                            .put("error", "Please enter a valid credential profile ID").encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code", 500)
+                    .put("message", "Server error in fetching credential profile")
+                    .put("error", "Please enter a valid credential profile ID"));
         }
     }
 
@@ -424,53 +393,7 @@ public class Credentials implements CrudOperations
     @Override
     public void getAll(RoutingContext context)
     {
-        try
-        {
-            QueryUtility.getInstance().getAll(Constants.CREDENTIALS)
-                    .onComplete(result->
-                    {
-                        if(result.succeeded())
-                        {
-                            var credentials = result.result();
-
-                            if(!credentials.isEmpty())
-                            {
-                                context.response()
-                                        .setStatusCode(200)
-                                        .end(new JsonObject()
-                                                .put("status.code",200)
-                                                .put("message","Credential profiles fetched successfully")
-                                                .put("data",credentials).encodePrettily());
-                            }
-                            else
-                            {
-                                context.response()
-                                        .setStatusCode(200)
-                                        .end(new JsonObject()
-                                                .put("status.code",200)
-                                                .put("message","Credential profiles fetched successfully")
-                                                .put("data","No credential profiles currently").encodePrettily());
-                            }
-                        }
-                        else
-                        {
-                            context.response()
-                                    .setStatusCode(500)
-                                    .end(new JsonObject()
-                                            .put("status.code",500)
-                                            .put("message","Database error while fetching credential profiles")
-                                            .put("error",result.cause().getMessage()).encodePrettily());
-                        }
-                    });
-        }
-        catch (Exception exception)
-        {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in fetching credential profiles")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
-        }
+        // Pages with ?after=&limit=, otherwise whole table is streamed
+        Listing.list(context, Constants.CREDENTIALS, "profile_id", "Credential profiles fetched successfully", "Database error while fetching credential profiles");
     }
 }
@@ -1,8 +1,9 @@
 package org.example.routes;
 
 import io.vertx.core.Future;
-import io.vertx.core.WorkerExecutor;
-import io.vertx.core.json.JsonArray;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
@@ -12,17 +13,18 @@ import org.example.util.Helper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-
-import static org.example.Bootstrap.vertx;
 
 public class Discovery implements CrudOperations
 {
     private static final Logger logger = LoggerFactory.getLogger(Discovery.class);
 
-    private static final WorkerExecutor executor = vertx.createSharedWorkerExecutor("discovery",5,60, TimeUnit.SECONDS);
+    private final Vertx vertx;
+
+    public Discovery(Vertx vertx)
+    {
+        this.vertx = vertx;
+    }
 
     public void route(Router discoveryRouter)
     {
@@ -34,6 +36,8 @@ public class Discovery implements CrudOperations
 
             discoveryRouter.get("/").handler(this::getAll);
 
+            discoveryRouter.get("/jobs/:jobId").handler(this::job);
+
             discoveryRouter.get("/:id").handler(this::get);
 
             discoveryRouter.delete("/:id").handler(this::delete);
@@ -66,32 +70,26 @@ public class Discovery implements CrudOperations
 
             if(name == null || name.isEmpty() || ip == null || ip.isEmpty() || port == null || credential_profiles == null || credential_profiles.isEmpty() || device_type == null || device_type.isEmpty())
             {
-                context.response()
-                        .setStatusCode(500)
-                        .end(new JsonObject()
-                                .put("status.code",500)
-                                .put("message","Please enter required fields").encodePrettily());
+                Responses.send(context, 500, new JsonObject()
+                        .put("status.code",500)
+                        .put("message","Please enter required fields"));
 
                 return;
             }
 
             if (!Helper.validIp(ip))
             {
-                context.response()
-                        .setStatusCode(400)
-                        .end(new JsonObject()
-                                .put("status.code",400)
-                                .put("message","Invalid IP address provided").encodePrettily());
+                Responses.send(context, 400, new JsonObject()
+                        .put("status.code",400)
+                        .put("message","Invalid IP address provided"));
                 return;
             }
 
             if (Helper.validPort(port))
             {
-                context.response()
-                        .setStatusCode(400)
-                        .end(new JsonObject()
-                                .put("status.code",400)
-                                .put("message","Invalid port provided").encodePrettily());
+                Responses.send(context, 400, new JsonObject()
+                        .put("status.code",400)
+                        .put("message","Invalid port provided"));
                 return;
             }
 
@@ -119,29 +117,27 @@ public class Discovery implements CrudOperations
                     {
                         if(result.succeeded())
                         {
-                            context.response().setStatusCode(201).end(new JsonObject()
-                                            .put("status.code",201).put("message","Discovery created successfully")
-                                            .put("data",new JsonObject().put("discovery.id", result.result())).encodePrettily());
+                            ResponseCache.bump(ResponseCache.key(Constants.DISCOVERIES, result.result()));
+
+                            Responses.send(context, 201, new JsonObject()
+                                    .put("status.code",201).put("message","Discovery created successfully")
+                                    .put("data",new JsonObject().put("discovery.id", result.result())));
                         }
                         else
                         {
-                            context.response()
-                                    .setStatusCode(500)
-                                    .end(new JsonObject()
-                                            .put("status.code",500)
-                                            .put("message","Failed to create discovery")
-                                            .put("error",result.cause().getMessage()).encodePrettily());
+                            Responses.send(context, 500, new JsonObject()
+                                    .put("status.code",500)
+                                    .put("message","Failed to create discovery")
+                                    .put("error",result.cause().getMessage()));
                         }
                     });
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in creating discovery")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Server error in creating discovery")
+                    .put("error",exception.getCause().getMessage()));
         }
     }
 
@@ -165,11 +161,9 @@ public class Discovery implements CrudOperations
 
         if(name == null || name.isEmpty() || ip == null || ip.isEmpty() || port == null || credential_profiles == null || credential_profiles.isEmpty() || device_type == null || device_type.isEmpty())
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Please enter required fields").encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Please enter required fields"));
 
             return;
         }
@@ -177,21 +171,17 @@ public class Discovery implements CrudOperations
         {
             if (!Helper.validIp(ip))
             {
-                context.response()
-                        .setStatusCode(400)
-                        .end(new JsonObject()
-                                .put("status.code",400)
-                                .put("message","Invalid IP address provided").encodePrettily());
+                Responses.send(context, 400, new JsonObject()
+                        .put("status.code",400)
+                        .put("message","Invalid IP address provided"));
                 return;
             }
 
             if (Helper.validPort(port))
             {
-                context.response()
-                        .setStatusCode(400)
-                        .end(new JsonObject()
-                                .put("status.code",400)
-                                .put("message","Invalid port provided").encodePrettily());
+                Responses.send(context, 400, new JsonObject()
+                        .put("status.code",400)
+                        .put("message","Invalid port provided"));
                 return;
             }
 
@@ -208,31 +198,27 @@ public class Discovery implements CrudOperations
                     {
                         if(result.succeeded())
                         {
-                            context.response()
-                                    .setStatusCode(200)
-                                    .end(new JsonObject()
-                                            .put("status.code",200)
-                                            .put("message","Discovery updated successfully").encodePrettily());
+                            ResponseCache.bump(ResponseCache.key(Constants.DISCOVERIES, id));
+
+                            Responses.send(context, 200, new JsonObject()
+                                    .put("status.code",200)
+                                    .put("message","Discovery updated successfully"));
                         }
                         else
                         {
                             if (result.cause().getMessage().contains("No matching rows found"))
                             {
-                                context.response()
-                                        .setStatusCode(404)
-                                        .end(new JsonObject()
-                                                .put("status.code",404)
-                                                .put("message","Discovery not found of this ID")
-                                                .put("error",result.cause().getMessage()).encodePrettily());
+                                Responses.send(context, 404, new JsonObject()
+                                        .put("status.code",404)
+                                        .put("message","Discovery not found of this ID")
+                                        .put("error",result.cause().getMessage()));
                             }
                             else
                             {
-                                context.response()
-                                        .setStatusCode(500)
-                                        .end(new JsonObject()
-                                                .put("status.code",500)
-                                                .put("message","Database error while updating discovery")
-                                                .put("error",result.cause().getMessage()).encodePrettily());
+                                Responses.send(context, 500, new JsonObject()
+                                        .put("status.code",500)
+                                        .put("message","Database error while updating discovery")
+                                        .put("error",result.cause().getMessage()));
                             }
                         }
                     });
@@ -240,12 +226,10 @@ public class Discovery implements CrudOperations
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in updating discovery")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Server error in updating discovery")
+                    .put("error",exception.getCause().getMessage()));
         }
 
     }
@@ -259,11 +243,9 @@ public class Discovery implements CrudOperations
 
         if (discoveryID == null || discoveryID.isEmpty())
         {
-            context.response()
-                    .setStatusCode(404)
-                    .end(new JsonObject()
-                            .put("status.code", 404)
-                            .put("message", "Please enter a valid discovery ID").encodePrettily());
+            Responses.send(context, 404, new JsonObject()
+                    .put("status.code", 404)
+                    .put("message", "Please enter a valid discovery ID"));
             return;
         }
         try
@@ -275,42 +257,36 @@ public class Discovery implements CrudOperations
                     {
                         if(result.succeeded())
                         {
-                            context.response()
-                                    .setStatusCode(200)
-                                    .end(new JsonObject()
-                                            .put("status.code",200)
-                                            .put("message","Discovery deleted successfully").encodePrettily());
+                            ResponseCache.bump(ResponseCache.key(Constants.DISCOVERIES, id));
+
+                            Responses.send(context, 200, new JsonObject()
+                                    .put("status.code",200)
+                                    .put("message","Discovery deleted successfully"));
                         }
                         else
                         {
                             if (result.cause().getMessage().contains("Information not found"))
                             {
-                                context.response()
-                                        .setStatusCode(404)
-                                        .end(new JsonObject()
-                                                .put("status.code",404)
-                                                .put("message","Discovery not found of this ID").encodePrettily());
+                                Responses.send(context, 404, new JsonObject()
+                                        .put("status.code",404)
+                                        .put("message","Discovery not found of this ID"));
                             }
                             else
                             {
-                                context.response()
-                                        .setStatusCode(500)
-                                        .end(new JsonObject()
-                                                .put("status.code",500)
-                                                .put("message","Database error while deleting discovery")
-                                                .put("error",result.cause().getMessage()).encodePrettily());
+                                Responses.send(context, 500, new JsonObject()
+                                        .put("status.code",500)
+                                        .put("message","Database error while deleting discovery")
+                                        .put("error",result.cause().getMessage()));
                             }
                         }
                     });
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in deleting discovery")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Server error in deleting discovery")
+                    .put("error",exception.getCause().getMessage()));
         }
     }
 
@@ -322,11 +298,9 @@ public class Discovery implements CrudOperations
 
         if (discoveryID == null || discoveryID.isEmpty())
         {
-            context.response()
-                    .setStatusCode(404)
-                    .end(new JsonObject()
-                            .put("status.code", 404)
-                            .put("message", "Please enter a valid discovery ID").encodePrettily());
+            Responses.send(context, 404, new JsonObject()
+                    .put("status.code", 404)
+                    .put("message", "Please enter a valid discovery ID"));
             return;
         }
         try
@@ -335,49 +309,47 @@ public class Discovery implements CrudOperations
 
             var columns = List.of("credential_profile", "name", "ip","port","device_type","credential_profiles","status","hostname");
 
+            // Unchanged resource is answered from memory, with 304 when client already has it
+            var key = ResponseCache.key(Constants.DISCOVERIES, id);
+
+            if (ResponseCache.serve(context, key))
+            {
+                return;
+            }
+
+            var version = ResponseCache.version(key);
+
             QueryUtility.getInstance().get(Constants.DISCOVERIES,columns,new JsonObject().put("discovery_id",id))
                     .onComplete(result->
                     {
-                        if(result.succeeded())
+                        if(result.failed())
+                        {
+                            Responses.send(context, 500, new JsonObject()
+                                    .put("status.code",500)
+                                    .put("message","Database error while fetching discovery")
+                                    .put("error",result.cause().getMessage()));
+                        }
+                        else if (result.result().containsKey("error"))
                         {
-                            context.response()
-                                    .setStatusCode(200)
-                                    .end(new JsonObject()
-                                            .put("status.code",200)
-                                            .put("message","Discovery fetched successfully")
-                                            .put("data",result.result()).encodePrettily());
+                            Responses.send(context, 404, new JsonObject()
+                                    .put("status.code",404)
+                                    .put("message","Discovery not found of this ID"));
                         }
                         else
                         {
-                            if (result.result().containsKey("error"))
-                            {
-                                context.response()
-                                        .setStatusCode(404)
-                                        .end(new JsonObject()
-                                                .put("status.code",404)
-                                                .put("message","Discovery not found of this ID")
-                                                .put("error",result.cause().getMessage()).encodePrettily());
-                            }
-                            else
-                            {
-                                context.response()
-                                        .setStatusCode(500)
-                                        .end(new JsonObject()
-                                                .put("status.code",500)
-                                                .put("message","Database error while fetching discovery")
-                                                .put("error",result.cause().getMessage()).encodePrettily());
-                            }
+                            ResponseCache.send(context, key, version, new JsonObject()
+                                    .put("status.code",200)
+                                    .put("message","Discovery fetched successfully")
+                                    .put("data",result.result()));
                         }
                     });
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in fetching discovery for given ID")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Server error in fetching discovery for given ID")
+                    .put("error",exception.getCause().getMessage()));
         }
     }
 
@@ -385,270 +357,74 @@ public class Discovery implements CrudOperations
     @Override
     public void getAll(RoutingContext context)
     {
-        try
-        {
-            QueryUtility.getInstance().getAll(Constants.DISCOVERIES)
-                    .onComplete(result->
-                    {
-                        if(result.succeeded())
-                        {
-                            var discoveries = result.result();
-
-                            if(!discoveries.isEmpty())
-                            {
-                                context.response()
-                                        .setStatusCode(200)
-                                        .end(new JsonObject()
-                                                .put("status.code",200)
-                                                .put("message","Discoveries fetched successfully")
-                                                .put("data",discoveries).encodePrettily());
-                            }
-                            else
-                            {
-                                context.response()
-                                        .setStatusCode(200)
-                                        .end(new JsonObject()
-                                                .put("status.code",200)
-                                                .put("message","Discoveries fetched successfully")
-                                                .put("data","No discovery currently").encodePrettily());
-                            }
-                        }
-                        else
-                        {
-                            context.response()
-                                    .setStatusCode(500)
-                                    .end(new JsonObject()
-                                            .put("status.code",500)
-                                            .put("message","Database error while fetching discoveries")
-                                            .put("error",result.cause().getMessage()).encodePrettily());
-                        }
-                    });
-        }
-        catch (Exception exception)
-        {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in fetching discoveries")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
-        }
+        // Pages with ?after=&limit=, otherwise whole table is streamed
+        Listing.list(context, Constants.DISCOVERIES, "discovery_id", "Discoveries fetched successfully", "Database error while fetching discoveries");
     }
 
-    //Checking if device is up
+    //Queues a discovery run, client follows its progress through the job status endpoint
     private void discover(RoutingContext context)
     {
         var discoveryID = context.pathParam("id");
 
         if (discoveryID == null || discoveryID.isEmpty())
         {
-            context.response()
-                    .setStatusCode(404)
-                    .end(new JsonObject()
-                            .put("status.code", 404)
-                            .put("message", "Please enter a valid discovery ID").encodePrettily());
+            Responses.send(context, 404, new JsonObject()
+                    .put("status.code", 404)
+                    .put("message", "Please enter a valid discovery ID"));
             return;
         }
-        try
-        {
-            var id = Long.parseLong(discoveryID);
-
-            var columns = List.of("ip","port","device_type","credential_profiles");
-
-                //I will check whether this discovery ID is present in database or not
-                QueryUtility.getInstance().get(Constants.DISCOVERIES,columns,new JsonObject().put("discovery_id",id))
-                        .compose(deviceInfo->
-                        {
-                            if (deviceInfo.containsKey("error"))
-                            {
-                                return Future.failedFuture("This discovery ID was not found in the database");
-                            }
-
-                            var values = List.of("object_id");
-
-                            // Then I will check whether device is provisioned already or not
-                            return QueryUtility.getInstance().get(Constants.OBJECTS, values, new JsonObject().put("ip", deviceInfo.getString("ip")))
-                                    .compose(objectInfo ->
-                                    {
-                                        if (!objectInfo.containsKey("error"))
-                                        {
-                                            return Future.failedFuture("Device is already provisioned");
-                                        }
-
-                                        return Future.succeededFuture(deviceInfo);
-                                    });
-                        })
-                    .compose(deviceInfo->
-                    {
-
-                        var profiles = deviceInfo.getJsonArray("credential_profiles");
 
-                        List<Future<JsonObject>>credentialFutures = new ArrayList<>();
+        long id;
 
-                        if(profiles.isEmpty())
-                        {
-                            return Future.failedFuture("No credential profiles found for this ID");
-                        }
-                        for (int i = 0; i < profiles.size(); i++)
-                        {
-                            var profileID = profiles.getLong(i);
-
-                            var fields = List.of("profile_id,profile_protocol","user_name","user_password","community","version");
-
-                            var credentialFuture = QueryUtility.getInstance().get(Constants.CREDENTIALS, fields, new JsonObject().put("profile_id",profileID))
-
-                                    .onSuccess(result -> {
-                                        logger.info("Credential fetch succeeded for profile ID {}", profileID);
-                                    })
-                                    .onFailure(err -> {
-                                        logger.error("Credential for profile ID {} not found: {}", profileID, err.getMessage());
-                                    });
-
-                            credentialFutures.add(credentialFuture);
-                        }
-
-                        //Need to wait for each credential profile to get their respective credentials
-                        return Future.join(credentialFutures)
-                                .map(compositeFuture ->
-                                {
-                                    var profileData = new JsonArray();
-
-                                    for (int i = 0; i < compositeFuture.size(); i++)
-                                    {
-                                        var result = compositeFuture.<JsonObject>resultAt(i);
-
-                                        if (!result.containsKey("error"))
-                                        {
-                                            profileData.add(result);
-                                        }
-                                    }
-                                    deviceInfo.put("discovery.credential.profiles", profileData);
-
-                                    return deviceInfo;
-                                });
-                    })
-                    .compose(deviceInfo -> vertx.<JsonObject>executeBlocking(pingFuture ->
-                    {
-                        try
-                        {
-                            if (Helper.ping(deviceInfo.getString("ip")))
-                            {
-                                pingFuture.complete(deviceInfo);
-                            }
-                            else
-                            {
-                                pingFuture.fail("Device is down, ping failed");
-                            }
-                        }
-                        catch (Exception exception)
-                        {
-                            pingFuture.fail("Error during ping: " + exception.getMessage());
-                        }
-                    }))
-                    .compose(deviceInfo ->
-                    {
-                        try
-                        {
-                            QueryUtility.getInstance().get(Constants.DISCOVERIES, List.of("port"), new JsonObject().put("discovery_id", id))
-                                    .compose(portResult ->
-                                    {
-                                        var port = portResult.getInteger("port");
-
-                                        if (port == 161)
-                                        {
-                                            return Future.succeededFuture(deviceInfo);
-                                        }
-
-                                        // Check if the port is open
-                                        return Future.future(promise ->
-                                        {
-                                            if (Helper.isPortOpen(deviceInfo.getString("ip"), port))
-                                            {
-                                                promise.complete(deviceInfo);
-                                            }
-                                            else
-                                            {
-                                                promise.fail("Ping done but port is closed for the specified connection");
-                                            }
-
-                                        });
-                                    });
-                        }
-                        catch (Exception exception)
-                        {
-                            return Future.failedFuture("There was problem in fetching port");
-                        }
-
-                        return Future.succeededFuture(deviceInfo);
-
-                    })
-                    .compose(deviceInfo ->
-                    {
-                        try
-                        {
-                            return validCredential(deviceInfo);
-                        }
-                        catch (Exception exception)
-                        {
-                            return Future.failedFuture("Error during finding valid credential profile " + exception.getMessage());
-                        }
-                    })
-                    .compose(deviceInfo ->
-                    {
-                        try
-                        {
-                            // Update the status in the database after removing credential profiles
-                            deviceInfo.remove("discovery.credential.profiles");
-
-                            return QueryUtility.getInstance().update(Constants.DISCOVERIES,deviceInfo,new JsonObject().put("discovery_id",id))
-                                    .compose(updateResult -> {
-                                        if (updateResult)
-                                        {
-                                            return Future.succeededFuture("Device status updated in database");
-                                        }
-                                        else
-                                        {
-                                            return Future.failedFuture("Failed to update the database for the discoveryID");
-                                        }
-                                    });
-                        }
-                        catch (Exception exception)
-                        {
-                            return Future.failedFuture("Error during updating status of device in database " + exception.getMessage());
-                        }
-                    })
-                    .onSuccess(finalResult -> context.response().setStatusCode(200).end(new JsonObject().put("status.code",200).put("message",finalResult).encodePrettily()))
-
-                    .onFailure(error -> context.response().setStatusCode(400).end(new JsonObject().put("status.code",400).put("message",error.getMessage()).encodePrettily()));
+        try
+        {
+            id = Long.parseLong(discoveryID);
         }
-        catch (Exception exception)
+        catch (NumberFormatException exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in checking if the device is up or not")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
+            Responses.send(context, 400, new JsonObject()
+                    .put("status.code", 400)
+                    .put("message", "Please enter a valid discovery ID"));
+            return;
         }
+
+        vertx.eventBus().<JsonObject>request(Constants.DISCOVERY_RUN, id)
+                .onSuccess(reply ->
+                {
+                    var job = reply.body();
+
+                    context.response().putHeader(HttpHeaders.LOCATION, "/api/v1/discovery/jobs/" + job.getString("job.id"));
+
+                    Responses.send(context, 202, new JsonObject()
+                            .put("status.code", 202)
+                            .put("message", "Discovery job accepted")
+                            .put("data", job));
+                })
+                .onFailure(error ->
+                {
+                    var statusCode = error instanceof ReplyException && ((ReplyException) error).failureCode() == 429 ? 429 : 500;
+
+                    Responses.send(context, statusCode, new JsonObject()
+                            .put("status.code", statusCode)
+                            .put("message", "Discovery job not accepted")
+                            .put("error", error.getMessage()));
+                });
     }
 
-    private Future<JsonObject> validCredential(JsonObject deviceInfo)
+    private void job(RoutingContext context)
     {
-        return vertx.executeBlocking(promise ->
-        {
-            try
-            {
-                Helper.checkConnection(deviceInfo);
-
-                deviceInfo.remove(Constants.EVENT_TYPE);
-
-                promise.complete(deviceInfo);
-            }
-            catch (Exception exception)
-            {
-                promise.fail("Error during finding valid credential profile: " + exception.getMessage());
-            }
-        });
+        vertx.eventBus().<JsonObject>request(Constants.DISCOVERY_JOB, context.pathParam("jobId"))
+                .onSuccess(reply -> Responses.send(context, 200, new JsonObject()
+                        .put("status.code", 200)
+                        .put("message", "Discovery job fetched successfully")
+                        .put("data", reply.body())))
+                .onFailure(error ->
+                {
+                    var statusCode = error instanceof ReplyException && ((ReplyException) error).failureCode() == 404 ? 404 : 500;
+
+                    Responses.send(context, statusCode, new JsonObject()
+                            .put("status.code", statusCode)
+                            .put("message", error.getMessage()));
+                });
     }
-
 }
@@ -0,0 +1,173 @@
+package org.example.routes;
+
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import org.example.Constants;
+import org.example.database.QueryUtility;
+import org.example.database.RowCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ getAll of the modules. With ?after=<key>&limit=<rows> (either one is enough) a keyset page is answered,
+ its "next" being the after value of the following page. Without them whole table is streamed as a chunked response
+ of STREAM_PAGE_SIZE row pages, so listing any number of rows takes constant memory and holds no connection in between.
+*/
+class Listing
+{
+    private static final Logger logger = LoggerFactory.getLogger(Listing.class);
+
+    private Listing()
+    {
+
+    }
+
+    static void list(RoutingContext context, String tableName, String keyColumn, String message, String errorMessage)
+    {
+        var after = context.queryParams().get("after");
+
+        var limit = context.queryParams().get("limit");
+
+        if (after == null && limit == null)
+        {
+            stream(context, tableName, keyColumn, message, errorMessage);
+
+            return;
+        }
+
+        long afterKey;
+
+        int pageSize;
+
+        try
+        {
+            afterKey = after == null ? 0 : Long.parseLong(after);
+
+            pageSize = limit == null ? Constants.PAGE_SIZE : Integer.parseInt(limit);
+        }
+        catch (NumberFormatException exception)
+        {
+            Responses.send(context, 400, new JsonObject()
+                    .put("status.code",400)
+                    .put("message","after and limit must be numbers"));
+            return;
+        }
+
+        if (pageSize < 1 || pageSize > Constants.PAGE_MAX_SIZE)
+        {
+            Responses.send(context, 400, new JsonObject()
+                    .put("status.code",400)
+                    .put("message","limit must be between 1 and " + Constants.PAGE_MAX_SIZE));
+            return;
+        }
+
+        QueryUtility.getInstance().getPage(tableName, keyColumn, afterKey, pageSize)
+                .onSuccess(rows ->
+                {
+                    Long next = null;
+
+                    // A full page means there may be more, the last key is where the next page starts
+                    if (rows.size() == pageSize)
+                    {
+                        for (var row : rows)
+                        {
+                            next = row.getLong(keyColumn);
+                        }
+                    }
+
+                    context.response()
+                            .setStatusCode(200)
+                            .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                            .end(RowCodec.encode(200, message, rows, next, Responses.pretty(context)));
+                })
+                .onFailure(error -> failed(context, errorMessage, error));
+    }
+
+    private static void stream(RoutingContext context, String tableName, String keyColumn, String message, String errorMessage)
+    {
+        var writer = new RowCodec.ChunkWriter(200, message, Responses.pretty(context));
+
+        streamPage(context, writer, tableName, keyColumn, 0, errorMessage);
+    }
+
+    /*
+     Walks the table one keyset page per query, so its connection goes back to the pool between pages
+     and a slow download never holds one. Next page is only read once response has room for it.
+    */
+    private static void streamPage(RoutingContext context, RowCodec.ChunkWriter writer, String tableName, String keyColumn, long after, String errorMessage)
+    {
+        var response = context.response();
+
+        QueryUtility.getInstance().getPage(tableName, keyColumn, after, Constants.STREAM_PAGE_SIZE)
+                .onSuccess(rows ->
+                {
+                    if (response.closed())
+                    {
+                        // Client went away, rest of the table isn't read
+                        return;
+                    }
+
+                    if (!response.headWritten())
+                    {
+                        response.setChunked(true)
+                                .setStatusCode(200)
+                                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json");
+                    }
+
+                    response.write(writer.rows(rows));
+
+                    if (rows.size() < Constants.STREAM_PAGE_SIZE)
+                    {
+                        response.end(writer.end());
+
+                        return;
+                    }
+
+                    long last = after;
+
+                    for (var row : rows)
+                    {
+                        last = row.getLong(keyColumn);
+                    }
+
+                    var next = last;
+
+                    if (response.writeQueueFull())
+                    {
+                        response.drainHandler(v ->
+                        {
+                            response.drainHandler(null);
+
+                            streamPage(context, writer, tableName, keyColumn, next, errorMessage);
+                        });
+                    }
+                    else
+                    {
+                        streamPage(context, writer, tableName, keyColumn, next, errorMessage);
+                    }
+                })
+                .onFailure(error ->
+                {
+                    if (response.headWritten())
+                    {
+                        // Part of the list is already out, the client can only be told by a broken response
+                        logger.error("Streaming {} failed midway: {}", tableName, error.getMessage());
+
+                        response.reset();
+                    }
+                    else
+                    {
+                        failed(context, errorMessage, error);
+                    }
+                });
+    }
+
+    private static void failed(RoutingContext context, String errorMessage, Throwable error)
+    {
+        Responses.send(context, 500, new JsonObject()
+                .put("status.code",500)
+                .put("message",errorMessage)
+                .put("error",error.getMessage()));
+    }
+}
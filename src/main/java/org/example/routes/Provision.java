@@ -1,5 +1,6 @@
 package org.example.routes;
 import io.vertx.core.Future;
+import io.vertx.core.Vertx;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.vertx.core.json.JsonObject;
@@ -9,33 +10,31 @@ import org.example.database.QueryUtility;
 import org.example.Constants;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.List;
 import java.util.Objects;
 
-import static org.example.Bootstrap.vertx;
-
 public class Provision
 {
     private static final Logger logger = LoggerFactory.getLogger(Provision.class);
 
-    private final HashMap<String, Integer> linuxMetrics = new HashMap<>()
-    {{
-        put("Linux.Device", Constants.DEVICE_POLL_INTERVAL);
-
-        put("Linux.CPU", Constants.CPU_POLL_INTERVAL);
-
-        put("Linux.Process", Constants.PROCESS_POLL_INTERVAL);
+    //Immutable, so all Server instances can share them
+    private static final Map<String, Integer> linuxMetrics = Map.of(
+            "Linux.Device", Constants.DEVICE_POLL_INTERVAL,
+            "Linux.CPU", Constants.CPU_POLL_INTERVAL,
+            "Linux.Process", Constants.PROCESS_POLL_INTERVAL,
+            "Linux.Disk", Constants.DISK_POLL_INTERVAL);
 
-        put("Linux.Disk", Constants.DISK_POLL_INTERVAL);
-    }};
+    private static final Map<String, Integer> snmpMetrics = Map.of(
+            "SNMP.Device", Constants.SNMP_POLL_INTERVAL,
+            "SNMP.Interface", Constants.INTERFACE_POLL_INTERVAL);
 
-    private final HashMap<String, Integer> snmpMetrics = new HashMap<>()
-    {{
-        put("SNMP.Device", Constants.SNMP_POLL_INTERVAL);
+    private final Vertx vertx;
 
-        put("SNMP.Interface", Constants.INTERFACE_POLL_INTERVAL);
-    }};
+    public Provision(Vertx vertx)
+    {
+        this.vertx = vertx;
+    }
 
     public void route(Router provisionRouter)
     {
@@ -55,11 +54,9 @@ public class Provision
 
         if (discoveryID == null || discoveryID.isEmpty())
         {
-            context.response()
-                    .setStatusCode(404)
-                    .end(new JsonObject()
-                            .put("status.code", 404)
-                            .put("message", "Please enter a valid discovery ID").encodePrettily());
+            Responses.send(context, 404, new JsonObject()
+                    .put("status.code", 404)
+                    .put("message", "Please enter a valid discovery ID"));
             return;
         }
         try
@@ -110,19 +107,19 @@ public class Provision
                     })
                     .compose(discoveryInfo ->
                     {
-                        // Attaching metrics for the provisioned object
-                        List<Future<Long>> metricFutures = new ArrayList<>();
+                        // Attaching metrics for the provisioned object, all groups go in one round trip
+                        var metrics = new ArrayList<JsonObject>();
 
                         (Objects.equals(discoveryInfo.getString("device_type"), "Linux") ? linuxMetrics : snmpMetrics).forEach((key, value) ->
                         {
-                            metricFutures.add(QueryUtility.getInstance().insert(Constants.METRICS, new JsonObject()
+                            metrics.add(new JsonObject()
                                     .put("metric_group_name", key)
                                     .put("metric_poll_time", value)
-                                    .put("metric_object", discoveryInfo.getLong("object_id"))));
+                                    .put("metric_object", discoveryInfo.getLong("object_id")));
                         });
 
                         //If attaching any metric fails , no need to proceed further
-                        return Future.all(metricFutures).map(discoveryInfo);
+                        return QueryUtility.getInstance().insertBatch(Constants.METRICS, metrics).map(discoveryInfo);
                     })
                     .onSuccess(result ->
                     {
@@ -133,29 +130,23 @@ public class Provision
                                 .put("hostname",result.getString("hostname"))
                                 .put("device_type",result.getString("device_type")));
 
-                        context.response()
-                                .setStatusCode(201)
-                                .end(new JsonObject()
-                                        .put("status.code",201)
-                                        .put("message","Device provisioned successfully")
-                                        .put("data",new JsonObject()
-                                                .put("object.id", result.getLong("object_id"))).encodePrettily());
+                        Responses.send(context, 201, new JsonObject()
+                                .put("status.code",201)
+                                .put("message","Device provisioned successfully")
+                                .put("data",new JsonObject()
+                                        .put("object.id", result.getLong("object_id"))));
                     })
-                    .onFailure(error -> context.response()
-                            .setStatusCode(400)
-                            .end(new JsonObject()
-                                    .put("status.code",400)
-                                    .put("message","Device cannot be provisioned")
-                                    .put("error",error.getMessage()).encodePrettily()));
+                    .onFailure(error -> Responses.send(context, 400, new JsonObject()
+                            .put("status.code",400)
+                            .put("message","Device cannot be provisioned")
+                            .put("error",error.getMessage())));
         }
         catch (Exception exception)
         {
-            context.response()
-                    .setStatusCode(500)
-                    .end(new JsonObject()
-                            .put("status.code",500)
-                            .put("message","Server error in checking if the device is up or not")
-                            .put("error",exception.getCause().getMessage()).encodePrettily());
+            Responses.send(context, 500, new JsonObject()
+                    .put("status.code",500)
+                    .put("message","Server error in checking if the device is up or not")
+                    .put("error",exception.getCause().getMessage()));
         }
     }
 }
@@ -0,0 +1,148 @@
+package org.example.routes;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+import org.example.Constants;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+ Encoded single resource responses, shared by all Server instances.
+ Each resource ("table:id") has a version which is bumped after creating, updating or deleting it.
+ ETag is the boot time plus that version, so If-None-Match for a resource this run has seen is answered without database,
+ and tags handed out by an earlier run never match. A response is kept only if its version is still current.
+*/
+class ResponseCache
+{
+    private static class Entry
+    {
+        private final long version;
+
+        private final String body;
+
+        private Entry(long version, String body)
+        {
+            this.version = version;
+
+            this.body = body;
+        }
+    }
+
+    private static final long BOOT_TIME = System.currentTimeMillis();
+
+    private static final Map<String, Long> versions = new ConcurrentHashMap<>();
+
+    private static final Map<String, Entry> responses = new ConcurrentHashMap<>();
+
+    private static final AtomicBoolean listening = new AtomicBoolean();
+
+    private ResponseCache()
+    {
+
+    }
+
+    static String key(String tableName, long id)
+    {
+        return tableName + ":" + id;
+    }
+
+    //Services outside the routes report changes on the event bus, one consumer is enough for all Server instances
+    static void listen(Vertx vertx)
+    {
+        if (listening.compareAndSet(false, true))
+        {
+            vertx.eventBus().<Long>consumer(Constants.DISCOVERY_CHANGED, message -> bump(key(Constants.DISCOVERIES, message.body())));
+        }
+    }
+
+    static long version(String key)
+    {
+        return versions.getOrDefault(key, 0L);
+    }
+
+    static void bump(String key)
+    {
+        versions.merge(key, 1L, Long::sum);
+
+        responses.remove(key);
+    }
+
+    //Pretty body is a different representation, so it gets its own tag
+    private static String etag(long version, boolean pretty)
+    {
+        return "\"" + BOOT_TIME + "-" + version + (pretty ? "-p" : "") + "\"";
+    }
+
+    /*
+     Answers from memory when it can, returns false when the resource has to be read from database.
+     If-None-Match is only honoured for a resource known to this run: "*" needs a current cached body,
+     as only that proves the resource still exists, a tag needs that or a version bumped by a change.
+    */
+    static boolean serve(RoutingContext context, String key)
+    {
+        var version = version(key);
+
+        var pretty = Responses.pretty(context);
+
+        var etag = etag(version, pretty);
+
+        var entry = responses.get(key);
+
+        var current = entry != null && entry.version == version;
+
+        var ifNoneMatch = context.request().getHeader(HttpHeaders.IF_NONE_MATCH);
+
+        if (ifNoneMatch != null && (ifNoneMatch.trim().equals("*") ? current : (current || version > 0) && ifNoneMatch.contains(etag)))
+        {
+            context.response()
+                    .setStatusCode(304)
+                    .putHeader(HttpHeaders.ETAG, etag)
+                    .end();
+
+            return true;
+        }
+
+        // Pretty bodies are not kept, they are encoded on request
+        if (!current || pretty)
+        {
+            return false;
+        }
+
+        context.response()
+                .setStatusCode(200)
+                .putHeader(HttpHeaders.ETAG, etag)
+                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .end(entry.body);
+
+        return true;
+    }
+
+    //Sends a freshly read resource, version must be the one taken before reading it
+    static void send(RoutingContext context, String key, long version, JsonObject body)
+    {
+        var encoded = body.encode();
+
+        if (version(key) == version)
+        {
+            if (responses.size() >= Constants.RESPONSE_CACHE_SIZE)
+            {
+                // Rarely reached, dropping any one entry keeps the cache bounded
+                responses.keySet().stream().findAny().ifPresent(responses::remove);
+            }
+
+            responses.put(key, new Entry(version, encoded));
+        }
+
+        var pretty = Responses.pretty(context);
+
+        context.response()
+                .setStatusCode(200)
+                .putHeader(HttpHeaders.ETAG, etag(version, pretty))
+                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .end(pretty ? body.encodePrettily() : encoded);
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.routes;
+
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+//Writes replies of all routes, compact JSON unless client asks for ?pretty=true
+class Responses
+{
+    private Responses()
+    {
+
+    }
+
+    static boolean pretty(RoutingContext context)
+    {
+        return "true".equalsIgnoreCase(context.queryParams().get("pretty"));
+    }
+
+    static void send(RoutingContext context, int statusCode, JsonObject body)
+    {
+        context.response()
+                .setStatusCode(statusCode)
+                .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .end(pretty(context) ? body.encodePrettily() : body.encode());
+    }
+}
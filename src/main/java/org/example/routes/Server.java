@@ -2,51 +2,54 @@ package org.example.routes;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Promise;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.handler.BodyHandler;
-import org.example.Bootstrap;
 import org.example.Constants;
 
+/*
+ Deployed once per SERVER_INSTANCES, each instance builds its own routers on its own event loop and they share the port.
+ Modules are given the instance's Vertx, so their handlers and event bus requests stay on that event loop.
+*/
 public class Server extends AbstractVerticle
 {
     public void start(Promise<Void> promise)
     {
-        var router = Router.router(Bootstrap.vertx);
+        var router = Router.router(vertx);
+
+        ResponseCache.listen(vertx);
 
         //A)Credential Module : Credential Router for handling Credential routes
-        var credentialRouter = Router.router(Bootstrap.vertx);
+        var credentialRouter = Router.router(vertx);
 
         router.route("/api/v1/credentials/*").handler(BodyHandler.create()).subRouter(credentialRouter);
 
-        new Credentials().route(credentialRouter);
+        new Credentials(vertx).route(credentialRouter);
 
         //B)Discovery Module : Discovery Router for handling Discovery routes
-        var discoveryRouter = Router.router(Bootstrap.vertx);
+        var discoveryRouter = Router.router(vertx);
 
         router.route("/api/v1/discovery/*").handler(BodyHandler.create()).subRouter(discoveryRouter);
 
-        new Discovery().route(discoveryRouter);
+        new Discovery(vertx).route(discoveryRouter);
 
         //C)Provision Module : Provision Router for handling Provision routes
-        var provisionRouter = Router.router(Bootstrap.vertx);
+        var provisionRouter = Router.router(vertx);
 
         router.route("/api/v1/provision/*").subRouter(provisionRouter);
 
-        new Provision().route(provisionRouter);
+        new Provision(vertx).route(provisionRouter);
 
-        router.get("/api/v1/").handler(ctx -> ctx.response()
-                .setStatusCode(200)
-                .end(new JsonObject()
-                        .put("status.code",200)
-                        .put("message","Welcome to Homepage")
-                        .put("data","Root endpoint of API").encodePrettily()));
+        router.get("/api/v1/").handler(ctx -> Responses.send(ctx, 200, new JsonObject()
+                .put("status.code",200)
+                .put("message","Welcome to Homepage")
+                .put("data","Root endpoint of API")));
 
-        router.get("/notfound").handler(ctx-> ctx.response().setStatusCode(404).
-                end(new JsonObject()
+        router.get("/notfound").handler(ctx-> Responses.send(ctx, 404, new JsonObject()
                 .put("status.code",404)
                 .put("message","Not found")
-                .put("data","Requested endpoint doesn't exist").encodePrettily()));
+                .put("data","Requested endpoint doesn't exist")));
 
         router.route().failureHandler(ctx->{
             if(ctx.statusCode()==404)
@@ -55,11 +58,10 @@ public class Server extends AbstractVerticle
             }
             else
             {
-                ctx.response().setStatusCode(500).
-                        end(new JsonObject()
-                                .put("status.code",404)
-                                .put("message","Error occurred")
-                                .put("error",ctx.failure()).encodePrettily());
+                Responses.send(ctx, 500, new JsonObject()
+                        .put("status.code",404)
+                        .put("message","Error occurred")
+                        .put("error",ctx.failure()));
             }
         });
 
@@ -67,7 +69,13 @@ public class Server extends AbstractVerticle
             ctx.fail(404); // Manually trigger a 404 for unmatched routes
         });
 
-        vertx.createHttpServer()
+        // Responses are compressed when client accepts gzip or deflate, h2c upgrade and prior knowledge HTTP/2 are served next to HTTP/1.1
+        var options = new HttpServerOptions()
+                .setCompressionSupported(true)
+                .setCompressionLevel(Constants.HTTP_COMPRESSION_LEVEL)
+                .setHttp2ClearTextEnabled(true);
+
+        vertx.createHttpServer(options)
 
                 .exceptionHandler(handler->promise.fail(handler.getCause().getMessage()))
 
@@ -0,0 +1,198 @@
+package org.example.services;
+
+import org.example.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/*
+ Windowed, acknowledged transport over a DEALER socket, for a ROUTER on collector side.
+ Each record goes as [offset][file name][record] frames, offset being the record's position in the metric log.
+ With batching a whole batch goes as [offset of its first record][batch header][batch] frames instead.
+ Collector answers with a single frame holding offset of the next record it expects (cumulative ack).
+ At most ACK_WINDOW records are unacknowledged at a time and whole window is resent when no ack arrives in time (go-back-N).
+ Blocking, so it is only used from ordered executeBlocking of FileSender.
+*/
+public class AckedTransport
+{
+    private static final Logger logger = LoggerFactory.getLogger(AckedTransport.class);
+
+    private static class InFlight
+    {
+        private final long offset;
+
+        private final int records;
+
+        private final String label;
+
+        private final ByteBuffer payload;
+
+        private InFlight(long offset, int records, String label, ByteBuffer payload)
+        {
+            this.offset = offset;
+
+            this.records = records;
+
+            this.label = label;
+
+            this.payload = payload;
+        }
+    }
+
+    private final ZMQ.Socket socket;
+
+    private final int window;
+
+    private final int ackTimeout;
+
+    private final int maxRetries;
+
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>();
+
+    private int inFlightRecords;
+
+    private long acknowledged; //Offset of next record collector expects, everything before it was received
+
+    private long lastProgress;
+
+    private int retries;
+
+    public AckedTransport(ZContext context)
+    {
+        this(context, "tcp://" + Constants.IP + ":" + Constants.ZMQ_PORT, Constants.ACK_WINDOW, Constants.ACK_TIMEOUT, Constants.ACK_RETRIES);
+    }
+
+    AckedTransport(ZContext context, String endpoint, int window, int ackTimeout, int maxRetries)
+    {
+        this.window = window;
+
+        this.ackTimeout = ackTimeout;
+
+        this.maxRetries = maxRetries;
+
+        socket = context.createSocket(ZMQ.DEALER);
+
+        socket.setReceiveTimeOut(Constants.ACK_POLL_TIMEOUT);
+
+        socket.connect(endpoint);
+    }
+
+    //Starts a new round from sender's checkpoint, anything still in flight from an earlier round is resent from there
+    public void reset(long checkpoint)
+    {
+        inFlight.clear();
+
+        inFlightRecords = 0;
+
+        acknowledged = checkpoint;
+
+        lastProgress = System.currentTimeMillis();
+
+        retries = 0;
+    }
+
+    public long acknowledged()
+    {
+        return acknowledged;
+    }
+
+    //Waits for room in the window, returns false once collector stopped acknowledging even after retransmits
+    public boolean send(long offset, int records, String label, ByteBuffer payload)
+    {
+        while (inFlightRecords >= window)
+        {
+            if (!awaitAck())
+            {
+                return false;
+            }
+        }
+
+        var record = new InFlight(offset, records, label, payload);
+
+        inFlight.add(record);
+
+        inFlightRecords += records;
+
+        return transmit(record);
+    }
+
+    //Waits till every record in flight is acknowledged, returns false if collector stopped answering
+    public boolean drain()
+    {
+        while (!inFlight.isEmpty())
+        {
+            if (!awaitAck())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean transmit(InFlight record)
+    {
+        // duplicate() so a retransmit sends the record from its start again
+        return socket.sendMore(Long.toString(record.offset))
+                && socket.sendMore(record.label)
+                && socket.sendByteBuffer(record.payload.duplicate(), 0) >= 0;
+    }
+
+    private boolean awaitAck()
+    {
+        var ack = socket.recvStr();
+
+        if (ack != null)
+        {
+            var offset = Long.parseLong(ack.trim());
+
+            if (offset > acknowledged)
+            {
+                acknowledged = offset;
+
+                lastProgress = System.currentTimeMillis();
+
+                retries = 0;
+
+                while (!inFlight.isEmpty() && inFlight.peek().offset + inFlight.peek().records <= acknowledged)
+                {
+                    inFlightRecords -= inFlight.poll().records;
+                }
+            }
+            return true;
+        }
+
+        if (System.currentTimeMillis() - lastProgress < ackTimeout)
+        {
+            return true;
+        }
+
+        if (++retries > maxRetries)
+        {
+            logger.error("Collector didn't acknowledge offset {} after {} retransmits", acknowledged, maxRetries);
+
+            return false;
+        }
+
+        logger.warn("No acknowledgement since offset {}, resending {} records", acknowledged, inFlightRecords);
+
+        lastProgress = System.currentTimeMillis();
+
+        for (var record : inFlight)
+        {
+            if (!transmit(record))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void close()
+    {
+        socket.close();
+    }
+}
@@ -0,0 +1,300 @@
+package org.example.services;
+
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.Constants;
+import org.example.database.QueryUtility;
+import org.example.util.BlockingExecutor;
+import org.example.util.Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/*
+ Runs discoveries as jobs, so POST /:id/run is answered at once instead of waiting on ping, port and credential checks.
+ Single instance reached over event bus, so every Server instance sees the same jobs.
+ At most DISCOVERY_MAX_CONCURRENCY jobs run and DISCOVERY_QUEUE_SIZE wait, a run of a discovery which already has
+ a job queued or running gets that job back. Finished jobs are kept for DISCOVERY_JOB_RETENTION for status polling.
+*/
+public class DiscoveryRunner extends AbstractVerticle
+{
+    private static final Logger logger = LoggerFactory.getLogger(DiscoveryRunner.class);
+
+    private final Map<String, JsonObject> jobs = new HashMap<>();
+
+    private final Map<Long, String> activeJobs = new HashMap<>(); //Queued or running job of each discovery
+
+    private final ArrayDeque<JsonObject> queue = new ArrayDeque<>();
+
+    private int running;
+
+    public void start()
+    {
+        vertx.eventBus().<Long>consumer(Constants.DISCOVERY_RUN, this::submit);
+
+        vertx.eventBus().<String>consumer(Constants.DISCOVERY_JOB, message ->
+        {
+            var job = jobs.get(message.body());
+
+            if (job == null)
+            {
+                message.fail(404, "Discovery job not found");
+            }
+            else
+            {
+                message.reply(job.copy());
+            }
+        });
+    }
+
+    private void submit(Message<Long> message)
+    {
+        var discoveryId = message.body();
+
+        var activeJob = activeJobs.get(discoveryId);
+
+        if (activeJob != null)
+        {
+            message.reply(jobs.get(activeJob).copy());
+
+            return;
+        }
+
+        if (running >= Constants.DISCOVERY_MAX_CONCURRENCY && queue.size() >= Constants.DISCOVERY_QUEUE_SIZE)
+        {
+            message.fail(429, "Discovery queue is full");
+
+            return;
+        }
+
+        var job = new JsonObject()
+                .put("job.id", UUID.randomUUID().toString())
+                .put("discovery.id", discoveryId)
+                .put("status", "queued")
+                .put("created.at", Instant.now().toString());
+
+        jobs.put(job.getString("job.id"), job);
+
+        activeJobs.put(discoveryId, job.getString("job.id"));
+
+        message.reply(job.copy());
+
+        if (running < Constants.DISCOVERY_MAX_CONCURRENCY)
+        {
+            run(job);
+        }
+        else
+        {
+            queue.add(job);
+        }
+    }
+
+    private void run(JsonObject job)
+    {
+        running++;
+
+        job.put("status", "running");
+
+        var discoveryId = job.getLong("discovery.id");
+
+        discover(discoveryId).onComplete(result ->
+        {
+            running--;
+
+            job.put("status", result.succeeded() ? "succeeded" : "failed")
+                    .put("message", result.succeeded() ? result.result() : result.cause().getMessage())
+                    .put("finished.at", Instant.now().toString());
+
+            logger.info("Discovery {} {}: {}", discoveryId, job.getString("status"), job.getString("message"));
+
+            activeJobs.remove(discoveryId);
+
+            vertx.setTimer(Constants.DISCOVERY_JOB_RETENTION, id -> jobs.remove(job.getString("job.id")));
+
+            var next = queue.poll();
+
+            if (next != null)
+            {
+                run(next);
+            }
+        });
+    }
+
+    //Checking if device is up, then which credential profile works for it, and saving the outcome
+    private Future<String> discover(Long id)
+    {
+        var columns = List.of("ip","port","device_type","credential_profiles");
+
+        //I will check whether this discovery ID is present in database or not
+        return QueryUtility.getInstance().get(Constants.DISCOVERIES,columns,new JsonObject().put("discovery_id",id))
+                .compose(deviceInfo->
+                {
+                    if (deviceInfo.containsKey("error"))
+                    {
+                        return Future.failedFuture("This discovery ID was not found in the database");
+                    }
+
+                    var values = List.of("object_id");
+
+                    // Then I will check whether device is provisioned already or not
+                    return QueryUtility.getInstance().get(Constants.OBJECTS, values, new JsonObject().put("ip", deviceInfo.getString("ip")))
+                            .compose(objectInfo ->
+                            {
+                                if (!objectInfo.containsKey("error"))
+                                {
+                                    return Future.failedFuture("Device is already provisioned");
+                                }
+
+                                return Future.succeededFuture(deviceInfo);
+                            });
+                })
+                .compose(deviceInfo->
+                {
+
+                    var profiles = deviceInfo.getJsonArray("credential_profiles");
+
+                    List<Future<JsonObject>>credentialFutures = new ArrayList<>();
+
+                    if(profiles.isEmpty())
+                    {
+                        return Future.failedFuture("No credential profiles found for this ID");
+                    }
+                    for (int i = 0; i < profiles.size(); i++)
+                    {
+                        var profileID = profiles.getLong(i);
+
+                        var fields = List.of("profile_id,profile_protocol","user_name","user_password","community","version");
+
+                        var credentialFuture = QueryUtility.getInstance().get(Constants.CREDENTIALS, fields, new JsonObject().put("profile_id",profileID))
+
+                                .onSuccess(result -> {
+                                    logger.info("Credential fetch succeeded for profile ID {}", profileID);
+                                })
+                                .onFailure(err -> {
+                                    logger.error("Credential for profile ID {} not found: {}", profileID, err.getMessage());
+                                });
+
+                        credentialFutures.add(credentialFuture);
+                    }
+
+                    //Need to wait for each credential profile to get their respective credentials
+                    return Future.join(credentialFutures)
+                            .map(compositeFuture ->
+                            {
+                                var profileData = new JsonArray();
+
+                                for (int i = 0; i < compositeFuture.size(); i++)
+                                {
+                                    var result = compositeFuture.<JsonObject>resultAt(i);
+
+                                    if (!result.containsKey("error"))
+                                    {
+                                        profileData.add(result);
+                                    }
+                                }
+                                deviceInfo.put("discovery.credential.profiles", profileData);
+
+                                return deviceInfo;
+                            });
+                })
+                .compose(deviceInfo -> BlockingExecutor.execute(vertx, () ->
+                {
+                    if (!Helper.ping(deviceInfo.getString("ip")))
+                    {
+                        throw new IllegalStateException("Device is down, ping failed");
+                    }
+                    return deviceInfo;
+                }))
+                .compose(deviceInfo ->
+                {
+                    try
+                    {
+                        return QueryUtility.getInstance().get(Constants.DISCOVERIES, List.of("port"), new JsonObject().put("discovery_id", id))
+                                .compose(portResult ->
+                                {
+                                    var port = portResult.getInteger("port");
+
+                                    if (port == 161)
+                                    {
+                                        return Future.succeededFuture(deviceInfo);
+                                    }
+
+                                    // Check if the port is open, connect blocks for up to its timeout so it stays off the event loop
+                                    return BlockingExecutor.execute(vertx, () ->
+                                    {
+                                        if (!Helper.isPortOpen(deviceInfo.getString("ip"), port))
+                                        {
+                                            throw new IllegalStateException("Ping done but port is closed for the specified connection");
+                                        }
+                                        return deviceInfo;
+                                    });
+                                });
+                    }
+                    catch (Exception exception)
+                    {
+                        return Future.failedFuture("There was problem in fetching port");
+                    }
+                })
+                .compose(deviceInfo ->
+                {
+                    try
+                    {
+                        return validCredential(deviceInfo);
+                    }
+                    catch (Exception exception)
+                    {
+                        return Future.failedFuture("Error during finding valid credential profile " + exception.getMessage());
+                    }
+                })
+                .compose(deviceInfo ->
+                {
+                    try
+                    {
+                        // Update the status in the database after removing credential profiles
+                        deviceInfo.remove("discovery.credential.profiles");
+
+                        return QueryUtility.getInstance().update(Constants.DISCOVERIES,deviceInfo,new JsonObject().put("discovery_id",id))
+                                .compose(updateResult -> {
+                                    if (updateResult)
+                                    {
+                                        //Routes drop what they have cached of this discovery
+                                        vertx.eventBus().publish(Constants.DISCOVERY_CHANGED, id);
+
+                                        return Future.succeededFuture("Device status updated in database");
+                                    }
+                                    else
+                                    {
+                                        return Future.failedFuture("Failed to update the database for the discoveryID");
+                                    }
+                                });
+                    }
+                    catch (Exception exception)
+                    {
+                        return Future.failedFuture("Error during updating status of device in database " + exception.getMessage());
+                    }
+                });
+    }
+
+    private Future<JsonObject> validCredential(JsonObject deviceInfo)
+    {
+        return BlockingExecutor.execute(vertx, () ->
+        {
+            Helper.checkConnection(deviceInfo);
+
+            deviceInfo.remove(Constants.EVENT_TYPE);
+
+            return deviceInfo;
+        })
+        .recover(error -> Future.failedFuture("Error during finding valid credential profile: " + error.getMessage()));
+    }
+}
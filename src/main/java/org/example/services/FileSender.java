@@ -1,58 +1,217 @@
 package org.example.services;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.file.CopyOptions;
 import io.vertx.core.json.JsonObject;
 import org.example.Constants;
+import org.example.storage.SegmentReader;
+import org.example.storage.SegmentedLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeromq.ZContext;
 import org.zeromq.ZMQ;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
 
 public class FileSender extends AbstractVerticle
 {
     private static final Logger logger = LoggerFactory.getLogger(FileSender.class);
 
+    private static final String CHECKPOINT_PATH = Constants.BASE_DIRECTORY + "/sender.checkpoint";
+
+    private static final String DIRECT_LABEL = "direct"; //Stands in for segment name of records which never reached disk
+
     private ZMQ.Socket socket;
 
     private ZContext context;
 
-    public void start()
+    private AckedTransport transport;
+
+    private long checkpoint; //Log offset of the next record to send, everything before it has been sent
+
+    private final TreeSet<String> pending = new TreeSet<>(); //Sealed segments waiting to be sent, in log order
+
+    private String inFlight; //Segment being sent right now, segments are sent strictly one by one
+
+    private WatchService watcher;
+
+    private final ArrayDeque<Buffer> directQueue = new ArrayDeque<>(); //Records handed over by FileWriter without touching disk
+
+    private boolean draining;
+
+    private boolean collectorReachable = true;
+
+    public void start(Promise<Void> promise)
     {
         try
         {
             context = new ZContext();
 
-            socket = context.createSocket(ZMQ.PUSH);
+            if (Constants.ACKED_TRANSPORT)
+            {
+                transport = new AckedTransport(context);
+            }
+            else
+            {
+                socket = context.createSocket(ZMQ.PUSH);
+
+                if (Constants.DIRECT_PIPELINE)
+                {
+                    //Nothing is queued for a collector that isn't connected and only a little for a slow one,
+                    //so a non-blocking send fails soon and records spill to the log instead of piling up in ZMQ.
+                    //Blocking backlog sends give up after the timeout too, their segment is retried later
+                    socket.setImmediate(true);
+
+                    socket.setSndHWM(Constants.DIRECT_SEND_HWM);
+
+                    socket.setSendTimeOut(Constants.DIRECT_SEND_TIMEOUT);
+                }
+
+                socket.connect("tcp://" + Constants.IP + ":" + Constants.ZMQ_PORT);
+            }
+
+            loadCheckpoint()
+                    .onSuccess(offset ->
+                    {
+                        checkpoint = offset;
 
-            socket.connect("tcp://" + Constants.IP + ":" + Constants.ZMQ_PORT);
+                        logger.info("Resuming sending from log offset {}", checkpoint);
 
-            //Periodically processing files
-            vertx.setPeriodic(Constants.DATABASE_INTERVAL,id->processFiles());
+                        startWatcher();
+
+                        //Directory scan is only a fallback for anything watcher missed
+                        reconcile();
+
+                        vertx.setPeriodic(Constants.RECONCILE_INTERVAL,id->reconcile());
+
+                        vertx.eventBus().<Buffer>consumer(Constants.DIRECT_SEND, this::acceptDirect);
+
+                        promise.complete();
+                    })
+                    .onFailure(promise::fail);
         }
         catch (Exception exception)
         {
             logger.error("Failed to initialize ZMQ context: {}", exception.getMessage(), exception);
+
+            promise.fail(exception);
+        }
+    }
+
+    private Future<Long> loadCheckpoint()
+    {
+        return vertx.fileSystem().exists(CHECKPOINT_PATH)
+                .compose(exists -> exists
+                        ? vertx.fileSystem().readFile(CHECKPOINT_PATH).map(content -> Long.parseLong(content.toString().trim()))
+                        : Future.succeededFuture(0L));
+    }
+
+    //Written to a temporary file and moved over the old one, so a crash never leaves a half written checkpoint
+    private Future<Void> saveCheckpoint()
+    {
+        var temporary = CHECKPOINT_PATH + ".tmp";
+
+        return vertx.fileSystem().writeFile(temporary, Buffer.buffer(Long.toString(checkpoint)))
+                .compose(v -> vertx.fileSystem().move(temporary, CHECKPOINT_PATH, new CopyOptions().setReplaceExisting(true).setAtomicMove(true)));
+    }
+
+    //Segments are picked up as soon as FileWriter moves in their sealed marker, reconcile alone is left if watching fails
+    private void startWatcher()
+    {
+        try
+        {
+            watcher = FileSystems.getDefault().newWatchService();
+
+            Paths.get(Constants.BASE_DIRECTORY).register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+        }
+        catch (IOException exception)
+        {
+            logger.error("Failed to watch {}, relying on periodic scan: {}", Constants.BASE_DIRECTORY, exception.getMessage());
+
+            return;
         }
+
+        // Called from start, so this is the verticle's own context, events are handed back to it
+        var verticleContext = vertx.getOrCreateContext();
+
+        var thread = new Thread(() ->
+        {
+            try
+            {
+                while (true)
+                {
+                    var key = watcher.take();
+
+                    for (var event : key.pollEvents())
+                    {
+                        var fileName = event.context() != null ? event.context().toString() : "";
+
+                        if (fileName.endsWith(SegmentedLog.SEALED_SUFFIX))
+                        {
+                            var segmentPath = SegmentedLog.segmentPathOfMarker(Constants.BASE_DIRECTORY + "/" + fileName);
+
+                            verticleContext.runOnContext(v -> enqueue(segmentPath));
+                        }
+                    }
+                    key.reset();
+                }
+            }
+            catch (ClosedWatchServiceException | InterruptedException exception)
+            {
+                logger.info("Segment watcher stopped");
+            }
+        }, "segment-watcher");
+
+        thread.setDaemon(true);
+
+        thread.start();
     }
 
-    private void processFiles()
+    private void reconcile()
     {
-        vertx.fileSystem().readDir(Constants.BASE_DIRECTORY,result->
+        vertx.fileSystem().readDir(Constants.BASE_DIRECTORY, ".*\\" + SegmentedLog.SEALED_SUFFIX, result->
         {
            if (result.succeeded())
            {
-               var files = result.result();
+               var segments = new TreeSet<String>();
+
+               result.result().forEach(marker -> segments.add(SegmentedLog.segmentPathOfMarker(marker)));
 
-               if(!files.isEmpty())
+               if (segments.isEmpty())
                {
-                   logger.info("Found {} files", files.size());
+                   logger.info("Currently no polled data available");
 
-                   files.forEach(this::sendFile);
+                   return;
                }
-               else
+
+               //Lowest sealed segment starting past checkpoint means records in between are gone, resuming from it
+               var lowestOffset = SegmentedLog.baseOffset(segments.first());
+
+               if (inFlight == null && lowestOffset > checkpoint)
                {
-                   logger.info("Currently no polled data available");
+                   logger.warn("Log offsets {} to {} no longer exist, resuming from {}", checkpoint, lowestOffset, lowestOffset);
+
+                   checkpoint = lowestOffset;
                }
+
+               segments.forEach(this::enqueue);
+
+               // Also retries a segment kept back by a failed send
+               sendNext();
            }
            else
            {
@@ -61,56 +220,327 @@ public class FileSender extends AbstractVerticle
         });
     }
 
-    private void sendFile(String filePath)
+    private void enqueue(String segmentPath)
+    {
+        if (!segmentPath.equals(inFlight) && pending.add(segmentPath))
+        {
+            sendNext();
+        }
+    }
+
+    private void sendNext()
     {
-        vertx.fileSystem().readFile(filePath)
-                .compose(fileContent ->
+        if (inFlight != null || pending.isEmpty())
+        {
+            return;
+        }
+
+        // Segment after a gap waits, checkpoint could otherwise skip records of a segment not picked up yet
+        if (SegmentedLog.baseOffset(pending.first()) > checkpoint)
+        {
+            return;
+        }
+
+        inFlight = pending.pollFirst();
+
+        sendSegment(inFlight).onComplete(result ->
+        {
+            var segmentPath = inFlight;
+
+            inFlight = null;
+
+            if (result.succeeded() && result.result())
+            {
+                //Once backlog is sent completely, collector is taking records again and direct sending resumes
+                collectorReachable = pending.isEmpty();
+
+                sendNext();
+            }
+            else
+            {
+                //Kept back, next reconcile retries it before any later segment
+                collectorReachable = false;
+
+                pending.add(segmentPath);
+
+                if (result.failed())
                 {
-                    // Extract file name from path
-                    var fileName = Paths.get(filePath).getFileName().toString();
+                    logger.error("Error: {}", result.cause().getMessage());
+                }
+            }
+        });
+    }
 
-                    var fileParts = fileContent.toString().split("----------------------\n");
+    //Result tells whether whole segment was sent, only then it is deleted
+    private Future<Boolean> sendSegment(String filePath)
+    {
+        var markerPath = SegmentedLog.sealedPath(filePath);
 
-                    for (var part : fileParts)
+        return vertx.fileSystem().readFile(markerPath)
+                .map(marker -> Long.parseLong(marker.toString().trim()))
+                .compose(endOffset -> vertx.fileSystem().exists(filePath).compose(exists ->
+                {
+                    if (!exists || checkpoint >= endOffset)
                     {
-                        if(!part.trim().isEmpty())
-                        {
-                            var message = new JsonObject()
-                                    .put("filename", fileName)
-                                    .put("content", part);
-
-                            boolean result = socket.send(message.encode(), 0);
-
-                            if (!result)
-                            {
-                                logger.error("Failed to send message via ZMQ.");
-                            }
-                            else
-                            {
-                                logger.info("File part sent to ZMQ: {}", fileName);
-                            }
-                        }
+                        //A segment whose log is gone can't be sent any more, checkpoint moves past it like past a sent one
+                        checkpoint = Math.max(checkpoint, endOffset);
+
+                        return Future.succeededFuture(true);
+                    }
+                    return sendFile(filePath, endOffset);
+                }))
+                .compose(complete ->
+                {
+                    if (!complete)
+                    {
+                        return saveCheckpoint().map(false);
                     }
 
-                    //Will delete file after it has been sent
-                    return vertx.fileSystem().delete(filePath);
-                })
-                .onSuccess(v ->
+                    //Retention: segment is deleted only once the checkpoint has passed its end, marker goes last
+                    return saveCheckpoint()
+                            .compose(v -> deleteIfExists(filePath))
+                            .compose(v -> deleteIfExists(SegmentedLog.indexPath(filePath)))
+                            .compose(v -> deleteIfExists(markerPath))
+                            .onSuccess(v -> logger.info("Segment {} sent and deleted", filePath))
+                            .map(true);
+                });
+    }
+
+    private Future<Void> deleteIfExists(String path)
+    {
+        return vertx.fileSystem().exists(path)
+                .compose(exists -> exists ? vertx.fileSystem().delete(path) : Future.succeededFuture());
+    }
+
+    //Sends records from checkpoint onwards and advances checkpoint, result tells whether segment was fully sent
+    private Future<Boolean> sendFile(String filePath, long endOffset)
+    {
+        var baseOffset = SegmentedLog.baseOffset(filePath);
+
+        var resumeFrom = checkpoint;
+
+        var fileName = Paths.get(filePath).getFileName().toString();
+
+        Future<Long> sent;
+
+        if (Constants.ACKED_TRANSPORT || Constants.MAPPED_SEGMENTS)
+        {
+            //Segment is memory mapped, records go to ZMQ straight from the mapping
+            sent = vertx.executeBlocking(promise ->
+            {
+                try
                 {
-                    logger.info("File deleted successfully.");
-                })
-                .onFailure(error ->
+                    promise.complete(sendRecords(fileName, baseOffset, resumeFrom, SegmentReader.map(filePath), SegmentReader.map(SegmentedLog.indexPath(filePath))));
+                }
+                catch (Exception exception)
                 {
-                    logger.error("Error: {}", error.getMessage());
-                });
+                    promise.fail(exception);
+                }
+            }, true); // Ordered, so socket is never used by two worker threads at once
+        }
+        else
+        {
+            sent = vertx.fileSystem().readFile(SegmentedLog.indexPath(filePath))
+                    .otherwise(Buffer.buffer())
+                    .compose(index -> vertx.fileSystem().readFile(filePath)
+                            .map(fileContent -> sendRecords(fileName, baseOffset, resumeFrom, nioBuffer(fileContent), nioBuffer(index))));
+        }
+
+        return sent.map(delivered ->
+        {
+            if (delivered > checkpoint)
+            {
+                checkpoint = delivered;
+            }
+
+            if (checkpoint < endOffset)
+            {
+                logger.error("Failed to send record {} of {} via ZMQ, will resume from it", checkpoint - baseOffset, fileName);
+
+                return false;
+            }
+
+            return true;
+        });
+    }
+
+    //Walks segment from resumeFrom with configured transport, returns log offset of first record not delivered
+    private long sendRecords(String fileName, long baseOffset, long resumeFrom, ByteBuffer segment, ByteBuffer index)
+    {
+        var fromRecord = (int) Math.max(0, resumeFrom - baseOffset);
+
+        var batcher = Constants.BATCH_RECORDS > 1 ? new RecordBatcher(fileName, baseOffset + fromRecord, this::sendBatch) : null;
+
+        if (Constants.ACKED_TRANSPORT)
+        {
+            transport.reset(resumeFrom);
+        }
+
+        var nextRecord = SegmentReader.forEachRecord(segment, index, fromRecord, (record, payload) -> batcher != null
+                ? batcher.add(baseOffset + record, payload)
+                : sendRecord(fileName, baseOffset + record, payload));
+
+        var delivered = baseOffset + nextRecord;
+
+        if (batcher != null)
+        {
+            batcher.flush();
+
+            delivered = batcher.sentOffset();
+        }
+
+        //Records count as sent only once collector acknowledged them, so checkpoint follows the acks
+        if (Constants.ACKED_TRANSPORT)
+        {
+            transport.drain();
+
+            delivered = transport.acknowledged();
+        }
+
+        return delivered;
+    }
+
+    private boolean sendRecord(String fileName, long offset, ByteBuffer payload)
+    {
+        if (Constants.ACKED_TRANSPORT)
+        {
+            return transport.send(offset, 1, fileName, payload);
+        }
+
+        if (Constants.MAPPED_SEGMENTS)
+        {
+            return socket.sendMore(fileName) && socket.sendByteBuffer(payload, 0) >= 0;
+        }
+
+        var message = new JsonObject()
+                .put("filename", fileName)
+                .put("content", StandardCharsets.UTF_8.decode(payload).toString());
+
+        return socket.send(message.encode(), 0);
+    }
+
+    //Batch goes as one multipart message of [header][records] frames
+    private boolean sendBatch(long offset, int records, String header, ByteBuffer payload)
+    {
+        if (Constants.ACKED_TRANSPORT)
+        {
+            return transport.send(offset, records, header, payload);
+        }
+
+        return socket.sendMore(header) && socket.sendByteBuffer(payload, 0) >= 0;
+    }
+
+    //Record is only queued while collector is reachable and queue has room, otherwise FileWriter spills it to the log
+    private void acceptDirect(Message<Buffer> message)
+    {
+        if (!collectorReachable || directQueue.size() >= Constants.DIRECT_QUEUE_SIZE)
+        {
+            message.fail(503, "Direct queue is not accepting records");
+
+            return;
+        }
+
+        directQueue.add(message.body());
+
+        message.reply(null);
+
+        drainDirect();
+    }
+
+    private void drainDirect()
+    {
+        if (draining || directQueue.isEmpty())
+        {
+            return;
+        }
+
+        draining = true;
+
+        var records = new ArrayList<>(directQueue);
+
+        directQueue.clear();
+
+        Future<List<Buffer>> unsent;
+
+        if (Constants.MAPPED_SEGMENTS)
+        {
+            // Same ordered blocking execution as segment sending, so socket is never used by two threads at once
+            unsent = vertx.executeBlocking(promise -> promise.complete(sendDirect(records)), true);
+        }
+        else
+        {
+            unsent = Future.succeededFuture(sendDirect(records));
+        }
+
+        unsent.onComplete(result ->
+        {
+            draining = false;
+
+            var spilled = result.succeeded() ? result.result() : records;
+
+            if (!spilled.isEmpty())
+            {
+                //Collector stopped taking records, whatever is left goes to disk till a backlog round succeeds again
+                collectorReachable = false;
+
+                spilled.addAll(directQueue);
+
+                directQueue.clear();
+
+                logger.warn("Collector unreachable, spilling {} records to log", spilled.size());
+
+                spilled.forEach(record -> vertx.eventBus().send(Constants.FILE_SPILL, record));
+            }
+
+            drainDirect();
+        });
+    }
+
+    //Returns records which couldn't be sent, sending never waits so a slow collector can't stall the queue
+    private List<Buffer> sendDirect(List<Buffer> records)
+    {
+        for (int i = 0; i < records.size(); i++)
+        {
+            var record = records.get(i);
+
+            var sent = Constants.MAPPED_SEGMENTS
+                    ? socket.send(DIRECT_LABEL, ZMQ.SNDMORE | ZMQ.DONTWAIT) && socket.send(record.getBytes(), 0)
+                    : socket.send(new JsonObject().put("filename", DIRECT_LABEL).put("content", record.toString()).encode(), ZMQ.DONTWAIT);
+
+            if (!sent)
+            {
+                return new ArrayList<>(records.subList(i, records.size()));
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private static ByteBuffer nioBuffer(Buffer buffer)
+    {
+        return buffer.getByteBuf().nioBuffer();
     }
 
     public void stop()
     {
+        if (watcher != null)
+        {
+            try
+            {
+                watcher.close();
+            }
+            catch (IOException exception)
+            {
+                logger.error("Failed to close segment watcher: {}", exception.getMessage());
+            }
+        }
         if (socket != null)
         {
             socket.close();
         }
+        if (transport != null)
+        {
+            transport.close();
+        }
         if (context != null)
         {
             context.close();
@@ -2,10 +2,13 @@ package org.example.services;
 
 import io.vertx.core.AbstractVerticle;
 
+import io.vertx.core.Promise;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.example.Constants;
+import org.example.storage.SegmentedLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,119 +16,106 @@ public class FileWriter extends AbstractVerticle
 {
     private static final Logger logger = LoggerFactory.getLogger(FileWriter.class);
 
-    @Override
-    public void start()
-    {
-        vertx.eventBus().<JsonObject>consumer(Constants.FILE_WRITE, message ->
-        {
-            try
-            {
-                var data = message.body();
-
-                var ip = data.getString("ip");
-
-                var metricName = data.getString("metric.group");
-
-                var metrics = data.getValue("metrics");
+    //Acknowledged transport numbers records by their log offset, so with it every record has to go through the log
+    private static final boolean DIRECT = Constants.DIRECT_PIPELINE && !Constants.ACKED_TRANSPORT;
 
-                var timestamp = data.getString("timestamp");
+    private SegmentedLog log;
 
-                if (metrics instanceof String metricsString)
+    @Override
+    public void start(Promise<Void> promise)
+    {
+        SegmentedLog.open(vertx, Constants.BASE_DIRECTORY)
+                .onSuccess(segmentedLog ->
                 {
-                    try
-                    {
-                        if (metricsString.trim().startsWith("{"))
-                        {
-                            metrics = new JsonObject(metricsString);  // Parse as JsonObject
-                        }
-                        else
-                        {
-                            metrics = new JsonArray(metricsString);  // Parse as JsonArray
-                        }
-                    }
-                    catch (Exception exception)
-                    {
-                        logger.error("Failed to parse metrics string: {}", exception.getMessage());
-                    }
-                }
+                    log = segmentedLog;
 
-                var filePath = Constants.BASE_DIRECTORY + "/" + String.format("%s.txt", timestamp);
+                    //Sealing segments by age as well, so FileSender gets data even when few polls are coming
+                    vertx.setPeriodic(Constants.SEGMENT_MAX_AGE, id -> log.rollIfExpired());
 
-                var finalMetrics = metrics; //As metrics is been modified inside lambda expression so need to make it effectively final
+                    vertx.eventBus().<JsonObject>consumer(Constants.FILE_WRITE, this::write);
 
-                vertx.fileSystem().exists(filePath, existsResult ->
-                {
-                    if (existsResult.succeeded() && existsResult.result())
-                    {
-                        // File exists, append the data
-                        appendToFile(filePath, metricName, finalMetrics, ip);
-                    }
-                    else
-                    {
-                        // File does not exist, create a new one
-                        writeFile(filePath, metricName, finalMetrics, ip);
-                    }
-                });
-            }
-            catch (Exception exception)
-            {
-                logger.error("Exception occurred while handling file write: {}", exception.getMessage(), exception);
-            }
-        });
+                    //Records FileSender couldn't send directly come back here to be kept on disk
+                    vertx.eventBus().<Buffer>consumer(Constants.FILE_SPILL, message -> append(message.body()));
+
+                    promise.complete();
+                })
+                .onFailure(promise::fail);
     }
 
-    private void appendToFile(String filePath, String metricName, Object metrics, String ip)
+    private void write(Message<JsonObject> message)
     {
-        vertx.fileSystem().readFile(filePath, readResult ->
+        try
         {
-            if (readResult.succeeded())
-            {
-                var existingData = readResult.result().toString();
+            var data = message.body();
 
-                var separator = "\n" + "----------------------" + "\n"; // Separator
+            var ip = data.getString("ip");
 
-                var newData = new JsonObject()
-                        .put("ip", ip)
-                        .put("result", new JsonObject().put(metricName, metrics))
-                        .encodePrettily();
+            var metricName = data.getString("metric.group");
 
-                // Append the new data with a separator
-                vertx.fileSystem().writeFile(filePath, Buffer.buffer(existingData + separator + newData), writeResult ->
+            var metrics = data.getValue("metrics");
+
+            var timestamp = data.getString("timestamp");
+
+            if (metrics instanceof String metricsString)
+            {
+                try
                 {
-                    if (writeResult.succeeded())
+                    if (metricsString.trim().startsWith("{"))
                     {
-                        logger.info("Data appended successfully to: {}", filePath);
+                        metrics = new JsonObject(metricsString);  // Parse as JsonObject
                     }
                     else
                     {
-                        logger.error("Failed to append data to file: {}", writeResult.cause().getMessage());
+                        metrics = new JsonArray(metricsString);  // Parse as JsonArray
                     }
-                });
+                }
+                catch (Exception exception)
+                {
+                    logger.error("Failed to parse metrics string: {}", exception.getMessage());
+                }
+            }
+
+            // Compact record with its own timestamp, as records of many polls share a segment
+            var record = new JsonObject()
+                    .put("timestamp", timestamp)
+                    .put("ip", ip)
+                    .put("result", new JsonObject().put(metricName, metrics))
+                    .toBuffer();
+
+            if (DIRECT)
+            {
+                //Healthy path goes to FileSender in memory, log is written only when it refuses the record
+                vertx.eventBus().request(Constants.DIRECT_SEND, record)
+                        .onFailure(error -> append(record));
             }
             else
             {
-                logger.error("Failed to read the existing file for appending: {}", readResult.cause().getMessage());
+                append(record);
             }
-        });
+        }
+        catch (Exception exception)
+        {
+            logger.error("Exception occurred while handling file write: {}", exception.getMessage(), exception);
+        }
     }
 
-    private void writeFile(String filePath, String metricName, Object metrics, String ip)
+    private void append(Buffer record)
     {
-        vertx.fileSystem().writeFile(filePath,
-                Buffer.buffer(new JsonObject()
-                        .put("ip", ip)
-                        .put("result", new JsonObject().put(metricName, metrics))
-                        .encodePrettily()),
-                writeResult ->
-                {
-                    if (writeResult.succeeded())
-                    {
-                        logger.info("File written successfully: {}", filePath);
-                    }
-                    else
-                    {
-                        logger.error("Failed to write file: {}", writeResult.cause().getMessage());
-                    }
-                });
+        log.append(record)
+                .onFailure(error -> logger.error("Failed to append data to log: {}", error.getMessage()));
+    }
+
+    //Undeploy completes only once queued appends are on disk and the segment is sealed
+    @Override
+    public void stop(Promise<Void> promise)
+    {
+        if (log == null)
+        {
+            promise.complete();
+
+            return;
+        }
+
+        log.close().onComplete(promise);
     }
 }
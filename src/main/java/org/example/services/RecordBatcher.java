@@ -0,0 +1,168 @@
+package org.example.services;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import net.jpountz.lz4.LZ4Factory;
+import org.example.Constants;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+/*
+ Packs consecutive records of a segment into one multipart message: a JSON header frame and a payload frame.
+ Payload is the records with their length prefixes, compressed with BATCH_CODEC (none, deflate or lz4).
+ Header tells collector segment, log offset of first record, record count, codec and uncompressed length.
+*/
+public class RecordBatcher
+{
+    public interface Sink
+    {
+        boolean send(long offset, int records, String header, ByteBuffer payload);
+    }
+
+    private final String fileName;
+
+    private final Sink sink;
+
+    private final int maxRecords;
+
+    private final int maxBytes;
+
+    private final String codec;
+
+    private Buffer batch;
+
+    private long firstOffset;
+
+    private int records;
+
+    private long sentOffset; //Offset following the last batch which was sent successfully
+
+    public RecordBatcher(String fileName, long fromOffset, Sink sink)
+    {
+        this(fileName, fromOffset, sink, Constants.BATCH_RECORDS, Constants.BATCH_BYTES, Constants.BATCH_CODEC);
+    }
+
+    RecordBatcher(String fileName, long fromOffset, Sink sink, int maxRecords, int maxBytes, String codec)
+    {
+        this.fileName = fileName;
+
+        this.sink = sink;
+
+        this.sentOffset = fromOffset;
+
+        this.maxRecords = maxRecords;
+
+        this.maxBytes = maxBytes;
+
+        this.codec = codec;
+
+        this.batch = Buffer.buffer(maxBytes);
+    }
+
+    public long sentOffset()
+    {
+        return sentOffset;
+    }
+
+    //Returns false when a full batch couldn't be sent, walk should then stop so it is resent later
+    public boolean add(long offset, ByteBuffer payload)
+    {
+        if (records > 0 && (records >= maxRecords || batch.length() + 4 + payload.remaining() > maxBytes))
+        {
+            if (!flush())
+            {
+                return false;
+            }
+        }
+
+        if (records == 0)
+        {
+            firstOffset = offset;
+        }
+
+        //Wrapped, not copied, so the record is copied once, straight into the batch
+        batch.appendInt(payload.remaining()).appendBuffer(Buffer.buffer(Unpooled.wrappedBuffer(payload)));
+
+        records++;
+
+        return true;
+    }
+
+    public boolean flush()
+    {
+        if (records == 0)
+        {
+            return true;
+        }
+
+        //A view on the batch's bytes, the batch is replaced rather than reused once it is sent
+        var raw = batch.getByteBuf();
+
+        var header = new JsonObject()
+                .put("filename", fileName)
+                .put("offset", firstOffset)
+                .put("records", records)
+                .put("codec", codec)
+                .put("length", raw.readableBytes())
+                .encode();
+
+        if (!sink.send(firstOffset, records, header, compress(codec, raw.nioBuffer())))
+        {
+            return false;
+        }
+
+        sentOffset = firstOffset + records;
+
+        batch = Buffer.buffer(maxBytes);
+
+        records = 0;
+
+        return true;
+    }
+
+    private static ByteBuffer compress(String codec, ByteBuffer raw)
+    {
+        switch (codec)
+        {
+            case "lz4":
+                var compressor = LZ4Factory.fastestInstance().fastCompressor();
+
+                var output = ByteBuffer.allocate(compressor.maxCompressedLength(raw.remaining()));
+
+                compressor.compress(raw, output);
+
+                return output.flip();
+
+            case "deflate":
+                var deflater = new Deflater(Deflater.BEST_SPEED);
+
+                try
+                {
+                    deflater.setInput(raw);
+
+                    deflater.finish();
+
+                    var compressed = Buffer.buffer(raw.remaining() / 2 + 64);
+
+                    var chunk = new byte[8192];
+
+                    while (!deflater.finished())
+                    {
+                        var length = deflater.deflate(chunk);
+
+                        compressed.appendBytes(chunk, 0, length);
+                    }
+                    return compressed.getByteBuf().nioBuffer();
+                }
+                finally
+                {
+                    deflater.end();
+                }
+
+            default:
+                return raw;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+//Walks records of a sealed segment, payloads are handed out as slices of the segment's buffer without copying
+public class SegmentReader
+{
+    public interface RecordHandler
+    {
+        //Returning false stops the walk at this record
+        boolean handle(int record, ByteBuffer payload);
+    }
+
+    private SegmentReader()
+    {
+
+    }
+
+    //Memory maps a file read only, blocking so it must not be called on an event loop. Missing file maps to an empty buffer
+    public static ByteBuffer map(String path) throws IOException
+    {
+        if (!Files.exists(Paths.get(path)))
+        {
+            return ByteBuffer.allocate(0);
+        }
+
+        try (var channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+        {
+            // Mapping stays valid after channel is closed, it is released once the buffer is collected
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /*
+     Hands every record from fromRecord onwards to handler. Sparse index is used to jump close to fromRecord,
+     so resuming in the middle of a segment doesn't walk the records before it.
+     Returns number of the first record not handled, which equals record count when whole segment was walked.
+    */
+    public static int forEachRecord(ByteBuffer segment, ByteBuffer index, int fromRecord, RecordHandler handler)
+    {
+        var record = 0;
+
+        var position = 0;
+
+        // Binary search for last index entry at or before fromRecord
+        var low = 0;
+
+        var high = index.limit() / SegmentedLog.INDEX_ENTRY_BYTES - 1;
+
+        while (low <= high)
+        {
+            var middle = (low + high) >>> 1;
+
+            var indexedRecord = index.getInt(middle * SegmentedLog.INDEX_ENTRY_BYTES);
+
+            if (indexedRecord <= fromRecord)
+            {
+                record = indexedRecord;
+
+                position = index.getInt(middle * SegmentedLog.INDEX_ENTRY_BYTES + 4);
+
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle - 1;
+            }
+        }
+
+        while (position + SegmentedLog.LENGTH_BYTES <= segment.limit())
+        {
+            var length = segment.getInt(position);
+
+            if (length < 0 || position + SegmentedLog.LENGTH_BYTES + length > segment.limit())
+            {
+                break; // Torn record at the end of segment
+            }
+
+            if (record >= fromRecord)
+            {
+                var payload = segment.duplicate()
+                        .position(position + SegmentedLog.LENGTH_BYTES)
+                        .limit(position + SegmentedLog.LENGTH_BYTES + length)
+                        .slice();
+
+                if (!handler.handle(record, payload))
+                {
+                    break;
+                }
+            }
+
+            position += SegmentedLog.LENGTH_BYTES + length;
+
+            record++;
+        }
+
+        return record;
+    }
+}
@@ -0,0 +1,298 @@
+package org.example.storage;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.CopyOptions;
+import io.vertx.core.file.OpenOptions;
+import org.example.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+
+/*
+ Append-only metric log split in segments under one directory.
+ Segment <base>.log holds length prefixed records, <base> being offset of its first record in the whole log.
+ Segment <base>.index holds (record number within segment, byte position) pairs, one every INDEX_INTERVAL bytes.
+ Only newest segment is ever written. Once a segment is closed, <base>.sealed marker holding its end offset is moved in,
+ so readers never pick a segment which is still being written.
+ Highest sealed end offset is also kept in next.offset, so numbering goes on even after every segment was sent and deleted.
+*/
+public class SegmentedLog
+{
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedLog.class);
+
+    public static final String LOG_SUFFIX = ".log";
+
+    public static final String INDEX_SUFFIX = ".index";
+
+    public static final String SEALED_SUFFIX = ".sealed";
+
+    public static final String NEXT_OFFSET_FILE = "next.offset";
+
+    public static final int LENGTH_BYTES = 4;
+
+    public static final int INDEX_ENTRY_BYTES = 8;
+
+    private final Vertx vertx;
+
+    private final String directory;
+
+    private Future<AsyncFile> segment;
+
+    private Future<AsyncFile> index;
+
+    private long baseOffset;
+
+    private int records;
+
+    private long position;
+
+    private long lastIndexed;
+
+    private long createdAt;
+
+    private SegmentedLog(Vertx vertx, String directory)
+    {
+        this.vertx = vertx;
+
+        this.directory = directory;
+    }
+
+    /*
+     Opens the log. Segments an earlier run left open are sealed and a fresh segment is started after them,
+     except when newest segment holds no complete record: it is emptied and written again instead of being sealed,
+     so a segment that is (or will be) sealed is never reopened and the offset it starts at survives restarts.
+    */
+    public static Future<SegmentedLog> open(Vertx vertx, String directory)
+    {
+        var log = new SegmentedLog(vertx, directory);
+
+        var nextOffsetPath = directory + "/" + NEXT_OFFSET_FILE;
+
+        return vertx.fileSystem().mkdirs(directory)
+                .compose(v -> vertx.fileSystem().exists(nextOffsetPath))
+                .compose(exists -> exists
+                        ? vertx.fileSystem().readFile(nextOffsetPath).map(content -> Long.parseLong(content.toString().trim()))
+                        : Future.succeededFuture(0L))
+                .compose(sealedEnd -> vertx.fileSystem().readDir(directory, ".*\\" + LOG_SUFFIX).compose(files ->
+                {
+                    files.sort(String::compareTo);
+
+                    // Next offset continues after last complete record of newest segment, without any segment
+                    // after end of the last one sealed, so offsets FileSender has already passed are never used again
+                    var nextOffset = Future.succeededFuture(sealedEnd);
+
+                    for (int i = 0; i < files.size(); i++)
+                    {
+                        var file = files.get(i);
+
+                        var newest = i == files.size() - 1;
+
+                        nextOffset = nextOffset.compose(offset -> log.recover(file, newest));
+                    }
+
+                    return nextOffset;
+                }))
+                .map(nextOffset ->
+                {
+                    log.startSegment(nextOffset);
+
+                    return log;
+                });
+    }
+
+    //Returns end offset of a segment left by an earlier run, sealing it when it was left open
+    private Future<Long> recover(String file, boolean newest)
+    {
+        var base = baseOffset(file);
+
+        return vertx.fileSystem().exists(sealedPath(file))
+                .compose(sealed ->
+                {
+                    if (sealed)
+                    {
+                        return vertx.fileSystem().readFile(sealedPath(file))
+                                .map(marker -> Long.parseLong(marker.toString().trim()))
+                                .compose(endOffset -> endOffset == base && newest ? reuse(file) : Future.succeededFuture(endOffset));
+                    }
+
+                    return vertx.fileSystem().readFile(file)
+                            .map(content -> base + countRecords(content))
+                            .compose(endOffset -> endOffset == base && newest ? reuse(file) : seal(file, endOffset).map(endOffset));
+                });
+    }
+
+    //Newest segment without a complete record becomes the active one again, unsealed and without any torn record
+    private Future<Long> reuse(String file)
+    {
+        return deleteIfExists(sealedPath(file))
+                .compose(v -> vertx.fileSystem().truncate(file, 0))
+                .compose(v -> deleteIfExists(indexPath(file)))
+                .map(baseOffset(file));
+    }
+
+    private Future<Void> deleteIfExists(String path)
+    {
+        return vertx.fileSystem().exists(path)
+                .compose(exists -> exists ? vertx.fileSystem().delete(path) : Future.succeededFuture());
+    }
+
+    public static String segmentPath(String directory, long baseOffset)
+    {
+        return directory + "/" + String.format("%020d", baseOffset) + LOG_SUFFIX;
+    }
+
+    public static String indexPath(String segmentPath)
+    {
+        return segmentPath.substring(0, segmentPath.length() - LOG_SUFFIX.length()) + INDEX_SUFFIX;
+    }
+
+    public static String sealedPath(String segmentPath)
+    {
+        return segmentPath.substring(0, segmentPath.length() - LOG_SUFFIX.length()) + SEALED_SUFFIX;
+    }
+
+    public static String segmentPathOfMarker(String sealedPath)
+    {
+        return sealedPath.substring(0, sealedPath.length() - SEALED_SUFFIX.length()) + LOG_SUFFIX;
+    }
+
+    public static long baseOffset(String segmentPath)
+    {
+        var fileName = Paths.get(segmentPath).getFileName().toString();
+
+        return Long.parseLong(fileName.substring(0, fileName.length() - LOG_SUFFIX.length()));
+    }
+
+    //Counts complete records, a torn record at the end (crash in middle of write) is ignored
+    public static int countRecords(Buffer content)
+    {
+        var count = 0;
+
+        var position = 0;
+
+        while (position + LENGTH_BYTES <= content.length())
+        {
+            var length = content.getInt(position);
+
+            if (length < 0 || position + LENGTH_BYTES + length > content.length())
+            {
+                break;
+            }
+
+            position += LENGTH_BYTES + length;
+
+            count++;
+        }
+
+        return count;
+    }
+
+    private void startSegment(long nextOffset)
+    {
+        var options = new OpenOptions().setCreate(true).setAppend(true);
+
+        var path = segmentPath(directory, nextOffset);
+
+        baseOffset = nextOffset;
+
+        records = 0;
+
+        position = 0;
+
+        lastIndexed = -Constants.INDEX_INTERVAL;
+
+        createdAt = System.currentTimeMillis();
+
+        segment = vertx.fileSystem().open(path, options);
+
+        index = vertx.fileSystem().open(indexPath(path), options);
+
+        logger.info("Started log segment {}", path);
+    }
+
+    //Record boundaries and positions are decided here synchronously, AsyncFile keeps queued writes in order
+    public Future<Void> append(Buffer payload)
+    {
+        if (position - lastIndexed >= Constants.INDEX_INTERVAL)
+        {
+            var entry = Buffer.buffer(INDEX_ENTRY_BYTES).appendInt(records).appendInt((int) position);
+
+            index.compose(file -> file.write(entry))
+                    .onFailure(error -> logger.error("Failed to write index entry: {}", error.getMessage()));
+
+            lastIndexed = position;
+        }
+
+        var record = Buffer.buffer(LENGTH_BYTES + payload.length()).appendInt(payload.length()).appendBuffer(payload);
+
+        var written = segment.compose(file -> file.write(record));
+
+        position += record.length();
+
+        records++;
+
+        if (position >= Constants.SEGMENT_MAX_BYTES)
+        {
+            roll();
+        }
+
+        return written;
+    }
+
+    //Seals active segment once it is older than SEGMENT_MAX_AGE, empty segments are kept as they are
+    public void rollIfExpired()
+    {
+        if (records > 0 && System.currentTimeMillis() - createdAt >= Constants.SEGMENT_MAX_AGE)
+        {
+            roll();
+        }
+    }
+
+    public void roll()
+    {
+        close();
+
+        startSegment(baseOffset + records);
+    }
+
+    /*
+     Close is deferred by AsyncFile till its pending writes are done, segment is sealed only after that.
+     An empty segment is left unsealed, next open continues writing it.
+    */
+    public Future<Void> close()
+    {
+        var path = segmentPath(directory, baseOffset);
+
+        var endOffset = baseOffset + records;
+
+        var empty = records == 0;
+
+        var segmentClosed = segment.compose(AsyncFile::close);
+
+        var indexClosed = index.compose(AsyncFile::close);
+
+        return Future.all(segmentClosed, indexClosed)
+                .compose(v -> empty ? Future.<Void>succeededFuture() : seal(path, endOffset))
+                .onFailure(error -> logger.error("Failed to seal log segment {}: {}", path, error.getMessage()));
+    }
+
+    /*
+     Marker is written aside and moved in, so its appearance always means segment and marker are complete.
+     next.offset is replaced the same way before it, so it never lags behind a marker.
+    */
+    private Future<Void> seal(String path, long endOffset)
+    {
+        var nextOffsetPath = directory + "/" + NEXT_OFFSET_FILE;
+
+        var end = Buffer.buffer(Long.toString(endOffset));
+
+        return vertx.fileSystem().writeFile(nextOffsetPath + ".tmp", end)
+                .compose(v -> vertx.fileSystem().move(nextOffsetPath + ".tmp", nextOffsetPath, new CopyOptions().setReplaceExisting(true).setAtomicMove(true)))
+                .compose(v -> vertx.fileSystem().writeFile(sealedPath(path) + ".tmp", end))
+                .compose(v -> vertx.fileSystem().move(sealedPath(path) + ".tmp", sealedPath(path), new CopyOptions().setAtomicMove(true)));
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.util;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import org.example.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+
+/*
+ Runs blocking probes (ping, port checks, plugin calls) off the event loop.
+ With VIRTUAL_THREADS on a JDK 21+ runtime every task gets its own virtual thread, so thousands of slow probes
+ only park cheap threads instead of exhausting the worker pool. Otherwise tasks go to vertx's worker pool as before.
+ Result is always completed back on the calling context.
+*/
+public class BlockingExecutor
+{
+    private static final Logger logger = LoggerFactory.getLogger(BlockingExecutor.class);
+
+    private static final ExecutorService virtualThreads = Constants.VIRTUAL_THREADS ? virtualThreadExecutor() : null;
+
+    private BlockingExecutor()
+    {
+
+    }
+
+    //Looked up reflectively, as the build still targets a JDK without virtual threads. Null before JDK 21
+    static ExecutorService virtualThreadExecutor()
+    {
+        try
+        {
+            var executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+            logger.info("Blocking probes run on virtual threads");
+
+            return executor;
+        }
+        catch (Exception exception)
+        {
+            logger.warn("Virtual threads need JDK 21+, blocking probes run on worker pool");
+
+            return null;
+        }
+    }
+
+    public static <T> Future<T> execute(Vertx vertx, Callable<T> task)
+    {
+        return execute(vertx, task, virtualThreads);
+    }
+
+    static <T> Future<T> execute(Vertx vertx, Callable<T> task, ExecutorService virtualThreads)
+    {
+        if (virtualThreads == null)
+        {
+            return vertx.executeBlocking(task, false);
+        }
+
+        var context = vertx.getOrCreateContext();
+
+        Promise<T> promise = Promise.promise();
+
+        virtualThreads.execute(() ->
+        {
+            try
+            {
+                var result = task.call();
+
+                context.runOnContext(v -> promise.complete(result));
+            }
+            catch (Throwable throwable)
+            {
+                context.runOnContext(v -> promise.fail(throwable));
+            }
+        });
+
+        return promise.future();
+    }
+}
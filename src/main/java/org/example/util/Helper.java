@@ -6,9 +6,11 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.example.Constants;
+import org.example.plugin.PluginPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,7 +41,8 @@ public class Helper
     {
         try
         {
-            var process = new ProcessBuilder("ping","-c 5",ip).start();
+            // -w makes ping itself give up after 5 seconds, so reading its output till the end can't hang
+            var process = new ProcessBuilder("ping","-c 5","-w","5",ip).redirectErrorStream(true).start();
 
             var reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
 
@@ -47,25 +50,23 @@ public class Helper
 
             var down = false;
 
-            //Due to network latency if 5 packets are not send, then waitFor
-            var status = process.waitFor(5, TimeUnit.SECONDS); //Will return boolean , while exitvalue returns 0 or other value
-
-            if(!status)
-            {
-                process.destroy();
-
-                return false;
-            }
-
+            //Output is read before waiting, so process never blocks on a full pipe
             while((line = reader.readLine())!=null)
             {
                 if(line.contains("100% packet loss"))
                 {
                     down = true;
-
-                    break;
                 }
             }
+
+            var status = process.waitFor(1, TimeUnit.SECONDS); //Will return boolean , while exitvalue returns 0 or other value
+
+            if(!status)
+            {
+                process.destroy();
+
+                return false;
+            }
             //If status is true , but exit value can be 1
             if(process.exitValue()!=0)
             {
@@ -115,18 +116,16 @@ public class Helper
             // Setting event type to discover
             deviceInfo.put(Constants.EVENT_TYPE,Constants.DISCOVER);
 
-            // Spawning a process
-            var process = new ProcessBuilder(Constants.PLUGIN_PATH, deviceInfo.encode())
-                    .redirectErrorStream(true).start();
-
-            // Wait for the process to complete within 60 seconds
-            var status = process.waitFor(60, TimeUnit.SECONDS); //(boolean)
+            JsonObject result;
 
-            if (!status)
+            try
             {
-                process.destroy();
-
-                logger.warn("Connection check timed out");
+                // Handing request to a running plugin worker, it fails if plugin doesn't answer within timeout
+                result = PluginPool.getInstance().execute(deviceInfo).get().getJsonObject("result");
+            }
+            catch (ExecutionException exception)
+            {
+                logger.warn("Connection check failed: {}", exception.getCause().getMessage());
 
                 deviceInfo.put("credential_profile",null);
 
@@ -135,19 +134,11 @@ public class Helper
                 deviceInfo.put("status", "Down");
 
                 return;
-                // Terminate the process if it times out
             }
 
-            // Output from the Go executable
-            var reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-
-            var output = reader.readLine();
-
-            logger.info("Output from Go executable: {}", output);
-
-            // Parse the output and update the deviceInfo JSON object
+            logger.info("Output from Go executable: {}", result.encode());
 
-            var result = new JsonObject(output);
+            // Update the deviceInfo JSON object with the plugin's answer
 
             deviceInfo.put("credential_profile", result.getLong("credential.profile.id"));
 
@@ -0,0 +1,84 @@
+package org.example.database;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ RowCodec against the JsonObject per row conversion list routes used before it, both ending in response bytes.
+ Rows look like discovery profiles. Run with mvn -Pbenchmark test -Dbenchmark=RowCodecBenchmark
+ and add -prof gc to the JMH arguments to compare allocation as well.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowCodecBenchmark
+{
+    @Param({"10", "1000"})
+    public int rowCount;
+
+    private List<Row> rows;
+
+    @Setup
+    public void setup()
+    {
+        var columns = TestRows.columns("discovery_id", "discovery_name", "ip", "port", "status", "credential_profiles");
+
+        rows = new ArrayList<>(rowCount);
+
+        for (int i = 0; i < rowCount; i++)
+        {
+            rows.add(TestRows.row(columns, (long) i, "discovery-" + i, "10.0." + (i / 256) + "." + (i % 256), 22, i % 2 == 0,
+                    new JsonArray().add(1).add(2)));
+        }
+    }
+
+    @Benchmark
+    public Buffer rowCodec()
+    {
+        return RowCodec.encode(200, "Discoveries fetched successfully", rows, false);
+    }
+
+    @Benchmark
+    public Buffer jsonObjects()
+    {
+        var data = new JsonArray();
+
+        for (var row : rows)
+        {
+            var json = new JsonObject();
+
+            for (int i = 0; i < row.size(); i++)
+            {
+                json.put(row.getColumnName(i), row.getValue(i));
+            }
+
+            data.add(json);
+        }
+
+        return new JsonObject()
+                .put("status.code", 200)
+                .put("message", "Discoveries fetched successfully")
+                .put("data", data)
+                .toBuffer();
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.database;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.Tuple;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowCodecTest
+{
+    @Test
+    void envelopeHoldsEveryRow()
+    {
+        var columns = TestRows.columns("profile_id", "profile_name", "port", "ratio", "active", "missing");
+
+        var rows = List.of(
+                TestRows.row(columns, 1L, "linux", 22, 0.5, true, null),
+                TestRows.row(columns, 2L, "snmp \"v2\"", (short) 161, new BigDecimal("12.50"), false, null));
+
+        var encoded = new JsonObject(RowCodec.encode(200, "fetched", rows, false));
+
+        assertEquals(200, encoded.getInteger("status.code"));
+
+        assertEquals("fetched", encoded.getString("message"));
+
+        assertEquals(new JsonArray()
+                .add(new JsonObject().put("profile_id", 1).put("profile_name", "linux").put("port", 22).put("ratio", 0.5).put("active", true).putNull("missing"))
+                .add(new JsonObject().put("profile_id", 2).put("profile_name", "snmp \"v2\"").put("port", 161).put("ratio", 12.50).put("active", false).putNull("missing")),
+                encoded.getJsonArray("data"));
+
+        assertFalse(encoded.containsKey("next"));
+    }
+
+    @Test
+    void jsonColumnsAreWrittenAsJson()
+    {
+        var columns = TestRows.columns("credential_profiles", "settings", "empty");
+
+        var rows = List.of(TestRows.row(columns, new JsonArray().add(1).add(2), new JsonObject().put("retries", 3), Tuple.JSON_NULL));
+
+        var encoded = RowCodec.encode(200, "fetched", rows, false).toString();
+
+        assertTrue(encoded.contains("\"credential_profiles\":[1,2]"), encoded);
+
+        assertTrue(encoded.contains("\"settings\":{\"retries\":3}"), encoded);
+
+        assertTrue(encoded.contains("\"empty\":null"), encoded);
+    }
+
+    @Test
+    void temporalValuesAreStrings()
+    {
+        var columns = TestRows.columns("created_at");
+
+        var createdAt = LocalDateTime.of(2024, 5, 1, 10, 30);
+
+        var data = new JsonObject(RowCodec.encode(200, "fetched", List.of(TestRows.row(columns, createdAt)), false)).getJsonArray("data");
+
+        assertEquals(createdAt.toString(), data.getJsonObject(0).getString("created_at"));
+    }
+
+    @Test
+    void otherValuesAreEncodedLikeJsonObject()
+    {
+        var columns = TestRows.columns("ports");
+
+        var data = new JsonObject(RowCodec.encode(200, "fetched", List.of(TestRows.row(columns, (Object) new Integer[]{22, 161})), false))
+                .getJsonArray("data");
+
+        assertEquals(new JsonArray().add(22).add(161), data.getJsonObject(0).getJsonArray("ports"));
+    }
+
+    @Test
+    void pageCarriesNextCursor()
+    {
+        var columns = TestRows.columns("discovery_id");
+
+        var page = new JsonObject(RowCodec.encode(200, "fetched", List.of(TestRows.row(columns, 7L)), 7L, true));
+
+        assertEquals(7L, page.getLong("next"));
+
+        var last = new JsonObject(RowCodec.encode(200, "fetched", List.of(), null, false));
+
+        assertNull(last.getValue("next"));
+
+        assertTrue(last.getJsonArray("data").isEmpty());
+    }
+
+    @Test
+    void chunksAddUpToWholeEnvelope()
+    {
+        var columns = TestRows.columns("discovery_id", "ip");
+
+        var first = List.of(TestRows.row(columns, 1L, "10.0.0.1"), TestRows.row(columns, 2L, "10.0.0.2"));
+
+        var second = List.of(TestRows.row(columns, 3L, "10.0.0.3"));
+
+        var writer = new RowCodec.ChunkWriter(200, "fetched", false);
+
+        var chunked = writer.rows(first).appendBuffer(writer.rows(second)).appendBuffer(writer.rows(List.of())).appendBuffer(writer.end());
+
+        var all = new ArrayList<Row>(first);
+
+        all.addAll(second);
+
+        assertEquals(RowCodec.encode(200, "fetched", all, false).toString(), chunked.toString());
+    }
+}
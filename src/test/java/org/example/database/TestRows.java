@@ -0,0 +1,70 @@
+package org.example.database;
+
+import io.vertx.pgclient.impl.RowImpl;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.desc.ColumnDescriptor;
+import io.vertx.sqlclient.impl.RowDesc;
+
+import java.sql.JDBCType;
+import java.util.Arrays;
+
+//Builds rows the way the pg client hands them out, without a database
+class TestRows
+{
+    private TestRows()
+    {
+
+    }
+
+    static RowDesc columns(String... names)
+    {
+        var descriptors = Arrays.stream(names).map(TestRows::column).toArray(ColumnDescriptor[]::new);
+
+        return new RowDesc(descriptors)
+        {
+
+        };
+    }
+
+    static Row row(RowDesc columns, Object... values)
+    {
+        var row = new RowImpl(columns);
+
+        for (var value : values)
+        {
+            row.addValue(value);
+        }
+
+        return row;
+    }
+
+    private static ColumnDescriptor column(String name)
+    {
+        return new ColumnDescriptor()
+        {
+            @Override
+            public String name()
+            {
+                return name;
+            }
+
+            @Override
+            public boolean isArray()
+            {
+                return false;
+            }
+
+            @Override
+            public String typeName()
+            {
+                return "unknown";
+            }
+
+            @Override
+            public JDBCType jdbcType()
+            {
+                return JDBCType.OTHER;
+            }
+        };
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PluginOutputReaderTest
+{
+    @Test
+    void splitsLinesAcrossChunks() throws IOException
+    {
+        // Longer than one 8KB chunk, so the line is assembled from several reads
+        var longLine = "x".repeat(20000);
+
+        var reader = reader("first\n" + longLine + "\n\nlast\n", 64 * 1024);
+
+        assertEquals(List.of("first", longLine, "", "last"), readAll(reader));
+
+        assertEquals(0, reader.droppedLines());
+    }
+
+    @Test
+    void unterminatedLastLineIsReturned() throws IOException
+    {
+        var reader = reader("{\"a\":1}\n{\"b\":2}", 1024);
+
+        assertEquals(List.of("{\"a\":1}", "{\"b\":2}"), readAll(reader));
+    }
+
+    @Test
+    void linesOverCapAreDroppedAndCounted() throws IOException
+    {
+        var reader = reader("short\n" + "y".repeat(100) + "\nafter\n" + "z".repeat(100), 50);
+
+        assertEquals(List.of("short", "after"), readAll(reader));
+
+        assertEquals(2, reader.droppedLines());
+    }
+
+    @Test
+    void dropIsReportedAsItHappens() throws IOException
+    {
+        var reported = new AtomicInteger();
+
+        var text = "z".repeat(100) + "\nafter\n" + "y".repeat(100);
+
+        var reader = new PluginOutputReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), 50, reported::incrementAndGet);
+
+        assertEquals("after", reader.readLine());
+
+        assertEquals(1, reported.get());
+
+        // Unterminated oversized last line is reported before the stream's end is handed out
+        assertNull(reader.readLine());
+
+        assertEquals(2, reported.get());
+    }
+
+    @Test
+    void lineExactlyAtCapIsKept() throws IOException
+    {
+        var line = "w".repeat(50);
+
+        assertEquals(List.of(line), readAll(reader(line + "\n", 50)));
+    }
+
+    @Test
+    void handlesOneByteReads() throws IOException
+    {
+        // A pipe can hand out any number of bytes per read
+        var bytes = "one\ntwo\nthree".getBytes(StandardCharsets.UTF_8);
+
+        var input = new InputStream()
+        {
+            private int position;
+
+            @Override
+            public int read()
+            {
+                return position < bytes.length ? bytes[position++] : -1;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length)
+            {
+                if (position == bytes.length)
+                {
+                    return -1;
+                }
+
+                buffer[offset] = bytes[position++];
+
+                return 1;
+            }
+        };
+
+        assertEquals(List.of("one", "two", "three"), readAll(new PluginOutputReader(input, 1024)));
+    }
+
+    @Test
+    void emptyStreamEndsImmediately() throws IOException
+    {
+        assertNull(reader("", 1024).readLine());
+    }
+
+    private static PluginOutputReader reader(String text, int maxLineBytes)
+    {
+        return new PluginOutputReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), maxLineBytes);
+    }
+
+    private static List<String> readAll(PluginOutputReader reader) throws IOException
+    {
+        var lines = new ArrayList<String>();
+
+        String line;
+
+        while ((line = reader.readLine()) != null)
+        {
+            lines.add(line);
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,166 @@
+package org.example.plugin;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PluginPoolTest
+{
+    private static final List<String> STUB_COMMAND = List.of(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp", System.getProperty("java.class.path"),
+            StubPlugin.class.getName());
+
+    private PluginPool pool;
+
+    @AfterEach
+    void shutdown()
+    {
+        if (pool != null)
+        {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void responsesReachTheirOwnRequests() throws Exception
+    {
+        pool = new PluginPool(1, STUB_COMMAND, 10000);
+
+        // First request is answered last, so responses come back out of order
+        var slow = pool.execute(new JsonObject().put("name", "slow").put("delay", 2000));
+
+        var fast = new ArrayList<CompletableFuture<JsonObject>>();
+
+        for (int i = 0; i < 20; i++)
+        {
+            fast.add(pool.execute(new JsonObject().put("name", "fast-" + i)));
+        }
+
+        for (int i = 0; i < fast.size(); i++)
+        {
+            assertEquals("fast-" + i, fast.get(i).get(10, TimeUnit.SECONDS).getJsonObject("echo").getString("name"));
+        }
+
+        assertFalse(slow.isDone());
+
+        assertEquals("slow", slow.get(10, TimeUnit.SECONDS).getJsonObject("echo").getString("name"));
+    }
+
+    @Test
+    void recordsArriveBeforeFinalResponse() throws Exception
+    {
+        pool = new PluginPool(1, STUB_COMMAND, 10000);
+
+        var records = new CopyOnWriteArrayList<Integer>();
+
+        var response = pool.execute(new JsonObject().put("stub", "records").put("count", 5), record -> records.add(record.getInteger("index")));
+
+        response.get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0, 1, 2, 3, 4), records);
+    }
+
+    @Test
+    void errorResponseFailsRequest()
+    {
+        pool = new PluginPool(1, STUB_COMMAND, 10000);
+
+        var error = assertThrows(ExecutionException.class, () -> pool.execute(new JsonObject().put("stub", "error")).get(10, TimeUnit.SECONDS));
+
+        assertEquals("stub failure", error.getCause().getMessage());
+    }
+
+    @Test
+    void hungWorkerTimesOutAndIsRestarted() throws Exception
+    {
+        // Long enough for the stub's JVM to start and answer, it is killed if silent for as long
+        pool = new PluginPool(1, STUB_COMMAND, 3000);
+
+        awaitEcho();
+
+        var hung = pool.execute(new JsonObject().put("stub", "hang"));
+
+        var error = assertThrows(ExecutionException.class, () -> hung.get(10, TimeUnit.SECONDS));
+
+        assertInstanceOf(TimeoutException.class, error.getCause());
+
+        // Silent for the whole timeout, so process was killed and a fresh one answers
+        awaitEcho();
+    }
+
+    @Test
+    void oversizedResponseFailsRequestWithoutWaitingForTimeout() throws Exception
+    {
+        pool = new PluginPool(1, STUB_COMMAND, 30000);
+
+        awaitEcho();
+
+        var oversized = pool.execute(new JsonObject().put("stub", "oversized"));
+
+        // Plugin hangs after the dropped line, the request fails on the drop long before its timeout
+        var error = assertThrows(ExecutionException.class, () -> oversized.get(10, TimeUnit.SECONDS));
+
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+    }
+
+    @Test
+    void crashFailsPendingRequestsAndWorkerRestarts() throws Exception
+    {
+        pool = new PluginPool(1, STUB_COMMAND, 10000);
+
+        awaitEcho();
+
+        var waiting = pool.execute(new JsonObject().put("delay", 5000));
+
+        var crash = pool.execute(new JsonObject().put("stub", "crash"));
+
+        assertThrows(ExecutionException.class, () -> crash.get(10, TimeUnit.SECONDS));
+
+        var error = assertThrows(ExecutionException.class, () -> waiting.get(10, TimeUnit.SECONDS));
+
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+
+        awaitEcho();
+    }
+
+    //Retries while worker is (re)starting, a request then fails right away as no worker is alive
+    private void awaitEcho() throws Exception
+    {
+        var deadline = System.currentTimeMillis() + 15000;
+
+        while (true)
+        {
+            try
+            {
+                assertEquals("ping", pool.execute(new JsonObject().put("name", "ping")).get(10, TimeUnit.SECONDS)
+                        .getJsonObject("echo").getString("name"));
+
+                return;
+            }
+            catch (ExecutionException exception)
+            {
+                if (System.currentTimeMillis() > deadline)
+                {
+                    throw exception;
+                }
+
+                Thread.sleep(100);
+            }
+        }
+    }
+}
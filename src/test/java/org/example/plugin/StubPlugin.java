@@ -0,0 +1,96 @@
+package org.example.plugin;
+
+import io.vertx.core.json.JsonObject;
+import org.example.Constants;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/*
+ Stand-in for the plugin binary in worker mode, run as its own process by the tests.
+ What it does with a request is picked by its "stub" field:
+ echo (default) answers with the request after "delay" milliseconds, records streams "count" records first,
+ error answers with an error, hang never answers, oversized writes a line over PLUGIN_MAX_LINE_BYTES and then hangs,
+ and crash exits the process.
+ Every request is handled on its own thread, so a delayed request is answered after the ones sent behind it.
+*/
+public class StubPlugin
+{
+    public static void main(String[] args) throws Exception
+    {
+        var reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+
+        String line;
+
+        while ((line = reader.readLine()) != null)
+        {
+            var request = new JsonObject(line);
+
+            var thread = new Thread(() -> handle(request));
+
+            thread.setDaemon(true);
+
+            thread.start();
+        }
+    }
+
+    private static void handle(JsonObject request)
+    {
+        var requestId = request.getLong("request.id");
+
+        try
+        {
+            switch (request.getString("stub", "echo"))
+            {
+                case "crash":
+                    System.exit(3);
+
+                    return;
+
+                case "hang":
+                    Thread.sleep(Long.MAX_VALUE);
+
+                    return;
+
+                case "oversized":
+                    write(new JsonObject().put("request.id", requestId).put("echo", "x".repeat(Constants.PLUGIN_MAX_LINE_BYTES)));
+
+                    Thread.sleep(Long.MAX_VALUE);
+
+                    return;
+
+                case "error":
+                    write(new JsonObject().put("request.id", requestId).put("error", "stub failure"));
+
+                    return;
+
+                case "records":
+                    for (int i = 0; i < request.getInteger("count"); i++)
+                    {
+                        write(new JsonObject().put("request.id", requestId).put("record", new JsonObject().put("index", i)));
+                    }
+
+                    break;
+
+                default:
+                    Thread.sleep(request.getLong("delay", 0L));
+
+                    break;
+            }
+
+            write(new JsonObject().put("request.id", requestId).put("echo", request));
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static synchronized void write(JsonObject response)
+    {
+        System.out.println(response.encode());
+
+        System.out.flush();
+    }
+}
@@ -0,0 +1,184 @@
+package org.example.poll;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.example.Constants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SchedulerTest
+{
+    private Vertx vertx;
+
+    private Context context;
+
+    private final List<JsonObject> batches = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void start()
+    {
+        vertx = Vertx.vertx();
+
+        context = vertx.getOrCreateContext();
+
+        // Stands in for Poller, every batch is admitted
+        vertx.eventBus().<JsonObject>consumer(Constants.OBJECT_POLL, message ->
+        {
+            batches.add(message.body());
+
+            message.reply(new JsonObject());
+        });
+    }
+
+    @AfterEach
+    void stop() throws Exception
+    {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    //Scheduler is used from its verticle's context only, so is the test
+    private <T> T onContext(Callable<T> task) throws Exception
+    {
+        var result = new CompletableFuture<T>();
+
+        context.runOnContext(v ->
+        {
+            try
+            {
+                result.complete(task.call());
+            }
+            catch (Exception exception)
+            {
+                result.completeExceptionally(exception);
+            }
+        });
+
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private Scheduler scheduler(CredentialCache credentials)
+    {
+        var scheduler = new Scheduler(credentials);
+
+        scheduler.init(vertx, context);
+
+        return scheduler;
+    }
+
+    private static JsonObject device()
+    {
+        return new JsonObject()
+                .put("object_id", 1L)
+                .put("credential_profile", 7L)
+                .put("ip", "10.0.0.1")
+                .put("device_type", "Linux");
+    }
+
+    //Never polled, so the group is due on the wheel's next tick
+    private static JsonArray metrics()
+    {
+        return new JsonArray().add(new JsonObject()
+                .put("metric_object", 1L)
+                .put("metric_group_name", "Linux.CPU")
+                .put("metric_poll_time", 60)
+                .putNull("last_polled"));
+    }
+
+    private static JsonObject profile(String userName)
+    {
+        return new JsonObject().put("profile_protocol", "SSH").put("user_name", userName).put("user_password", "secret");
+    }
+
+    //Waits past the next tick, polls once and returns the devices of the batches sent
+    private JsonArray pollOnce(Scheduler scheduler) throws Exception
+    {
+        Thread.sleep(2L * Constants.SCHEDULER_TICK);
+
+        onContext(() ->
+        {
+            scheduler.checkAndPreparePolling();
+
+            return null;
+        });
+
+        var deadline = System.currentTimeMillis() + 5000;
+
+        while (batches.isEmpty() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(20);
+        }
+
+        var devices = new JsonArray();
+
+        batches.forEach(batch -> devices.addAll(batch.getJsonArray("devices")));
+
+        return devices;
+    }
+
+    @Test
+    void deviceProvisionedAgainIsPolledOnce() throws Exception
+    {
+        var scheduler = scheduler(new CredentialCache(profileId -> Future.succeededFuture(profile("admin"))));
+
+        onContext(() ->
+        {
+            scheduler.addDevice(1L, device(), metrics());
+
+            scheduler.addDevice(1L, device(), metrics());
+
+            return null;
+        });
+
+        assertEquals(1, pollOnce(scheduler).size());
+    }
+
+    @Test
+    void fetchStartedBeforeCredentialChangeIsNotApplied() throws Exception
+    {
+        var fetches = new CopyOnWriteArrayList<Promise<JsonObject>>();
+
+        var scheduler = scheduler(new CredentialCache(profileId ->
+        {
+            var fetch = Promise.<JsonObject>promise();
+
+            fetches.add(fetch);
+
+            return fetch.future();
+        }));
+
+        onContext(() ->
+        {
+            scheduler.addDevice(1L, device(), metrics());
+
+            // Profile changes while its first fetch is still in flight
+            scheduler.refreshProfile(7L);
+
+            fetches.get(1).complete(profile("new"));
+
+            fetches.get(0).complete(profile("old"));
+
+            return null;
+        });
+
+        assertEquals(2, fetches.size());
+
+        var devices = pollOnce(scheduler);
+
+        assertEquals(1, devices.size());
+
+        assertEquals("new", devices.getJsonObject(0).getString("user.name"));
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.poll;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest
+{
+    // 100 ms ticks, one revolution is 1 second
+    private final TimingWheel<String> wheel = new TimingWheel<>(100, 10, 0);
+
+    @Test
+    void itemIsNeverDueBeforeItsDeadline()
+    {
+        wheel.schedule("a", 150);
+
+        assertTrue(wheel.advance(199).isEmpty());
+
+        assertEquals(List.of("a"), wheel.advance(200));
+
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void overdueItemIsDueOnNextTick()
+    {
+        wheel.advance(1000);
+
+        wheel.schedule("late", 200);
+
+        wheel.schedule("now", 1000);
+
+        assertEquals(2, wheel.size());
+
+        assertTrue(wheel.advance(1099).isEmpty());
+
+        assertEquals(Set.of("late", "now"), new HashSet<>(wheel.advance(1100)));
+    }
+
+    @Test
+    void laterRevolutionsStayInSharedSlot()
+    {
+        // Ticks 5, 25 and 45 all land in slot 5
+        wheel.schedule("first", 500);
+
+        wheel.schedule("third", 2500);
+
+        wheel.schedule("fifth", 4500);
+
+        for (long now = 100; now <= 4500; now += 100)
+        {
+            var due = wheel.advance(now);
+
+            if (now == 500)
+            {
+                assertEquals(List.of("first"), due);
+            }
+            else if (now == 2500)
+            {
+                assertEquals(List.of("third"), due);
+            }
+            else if (now == 4500)
+            {
+                assertEquals(List.of("fifth"), due);
+            }
+            else
+            {
+                assertTrue(due.isEmpty(), "nothing due at " + now);
+            }
+        }
+
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void jumpLongerThanRevolutionReturnsEverythingElapsed()
+    {
+        wheel.schedule("a", 300);
+
+        wheel.schedule("b", 1200);
+
+        wheel.schedule("c", 2900);
+
+        wheel.schedule("d", 5000);
+
+        assertEquals(Set.of("a", "b", "c"), new HashSet<>(wheel.advance(3000)));
+
+        assertEquals(1, wheel.size());
+
+        assertTrue(wheel.advance(4900).isEmpty());
+
+        assertEquals(List.of("d"), wheel.advance(5000));
+    }
+
+    @Test
+    void advancingBackwardsKeepsCurrentTick()
+    {
+        wheel.advance(1000);
+
+        assertTrue(wheel.advance(500).isEmpty());
+
+        // Still scheduled relative to tick 10, not tick 5
+        wheel.schedule("a", 0);
+
+        assertTrue(wheel.advance(1000).isEmpty());
+
+        assertEquals(List.of("a"), wheel.advance(1100));
+    }
+
+    @Test
+    void rejectsInvalidDimensions()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(0, 10, 0));
+
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheel<String>(100, 0, 0));
+    }
+}
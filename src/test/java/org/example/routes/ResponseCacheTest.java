@@ -0,0 +1,172 @@
+package org.example.routes;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+//Drives ResponseCache through a route shaped like the modules' get handlers, with a map in place of the database
+class ResponseCacheTest
+{
+    private static final String TABLE = "response_cache_test";
+
+    private static final Map<Long, JsonObject> table = new ConcurrentHashMap<>();
+
+    private static Vertx vertx;
+
+    private static HttpServer server;
+
+    private static HttpClient client;
+
+    @BeforeAll
+    static void start() throws Exception
+    {
+        vertx = Vertx.vertx();
+
+        var router = Router.router(vertx);
+
+        router.get("/:id").handler(context ->
+        {
+            var id = Long.parseLong(context.pathParam("id"));
+
+            var key = ResponseCache.key(TABLE, id);
+
+            if (ResponseCache.serve(context, key))
+            {
+                return;
+            }
+
+            var version = ResponseCache.version(key);
+
+            var row = table.get(id);
+
+            if (row == null)
+            {
+                Responses.send(context, 404, new JsonObject().put("status.code", 404));
+            }
+            else
+            {
+                ResponseCache.send(context, key, version, row);
+            }
+        });
+
+        server = vertx.createHttpServer().requestHandler(router).listen(0).toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterAll
+    static void stop() throws Exception
+    {
+        vertx.close().toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private static HttpResponse<String> get(String path, String ifNoneMatch) throws Exception
+    {
+        var request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.actualPort() + path))
+                .timeout(Duration.ofSeconds(10));
+
+        if (ifNoneMatch != null)
+        {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String etag(HttpResponse<String> response)
+    {
+        return response.headers().firstValue("ETag").orElse(null);
+    }
+
+    @Test
+    void wildcardNeverAnswersForUnknownResource() throws Exception
+    {
+        assertEquals(404, get("/1000", "*").statusCode());
+    }
+
+    @Test
+    void wildcardAndTagMatchExistingResource() throws Exception
+    {
+        table.put(1L, new JsonObject().put("name", "first"));
+
+        var first = get("/1", null);
+
+        assertEquals(200, first.statusCode());
+
+        var etag = etag(first);
+
+        assertEquals(304, get("/1", etag).statusCode());
+
+        assertEquals(304, get("/1", "*").statusCode());
+    }
+
+    @Test
+    void changeInvalidatesTag() throws Exception
+    {
+        table.put(2L, new JsonObject().put("name", "before"));
+
+        var etag = etag(get("/2", null));
+
+        table.put(2L, new JsonObject().put("name", "after"));
+
+        ResponseCache.bump(ResponseCache.key(TABLE, 2L));
+
+        var changed = get("/2", etag);
+
+        assertEquals(200, changed.statusCode());
+
+        assertNotEquals(etag, etag(changed));
+    }
+
+    @Test
+    void deletedResourceIsNotAnsweredByWildcard() throws Exception
+    {
+        table.put(3L, new JsonObject().put("name", "gone soon"));
+
+        assertEquals(200, get("/3", null).statusCode());
+
+        table.remove(3L);
+
+        ResponseCache.bump(ResponseCache.key(TABLE, 3L));
+
+        assertEquals(404, get("/3", "*").statusCode());
+    }
+
+    @Test
+    void prettyBodyHasItsOwnTag() throws Exception
+    {
+        table.put(4L, new JsonObject().put("name", "fourth"));
+
+        var compact = etag(get("/4", null));
+
+        var pretty = etag(get("/4?pretty=true", null));
+
+        assertNotNull(pretty);
+
+        assertNotEquals(compact, pretty);
+
+        // A compact tag doesn't validate the pretty representation and the other way round
+        assertEquals(200, get("/4?pretty=true", compact).statusCode());
+
+        assertEquals(200, get("/4", pretty).statusCode());
+
+        assertEquals(304, get("/4?pretty=true", pretty).statusCode());
+    }
+}
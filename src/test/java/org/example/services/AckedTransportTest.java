@@ -0,0 +1,253 @@
+package org.example.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.zeromq.SocketType;
+import org.zeromq.ZContext;
+import org.zeromq.ZMQ;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AckedTransportTest
+{
+    private static final int ACK_TIMEOUT = 300;
+
+    private static final int RETRIES = 3;
+
+    /*
+     ROUTER standing in for the collector, a go-back-N receiver: a record is taken only when it is the one expected,
+     every frame is answered with a cumulative ack unless dropAck says that ack is lost.
+    */
+    private static class CollectorStub implements Runnable
+    {
+        private final ZMQ.Socket socket;
+
+        private final LongPredicate dropAck;
+
+        private final List<Long> received = new CopyOnWriteArrayList<>(); //Offset of every frame that arrived, retransmits included
+
+        private final List<Long> accepted = new CopyOnWriteArrayList<>();
+
+        private volatile boolean running = true;
+
+        private long expected;
+
+        private CollectorStub(ZContext context, LongPredicate dropAck)
+        {
+            this.dropAck = dropAck;
+
+            socket = context.createSocket(SocketType.ROUTER);
+
+            socket.setReceiveTimeOut(50);
+        }
+
+        @Override
+        public void run()
+        {
+            while (running)
+            {
+                var identity = socket.recv();
+
+                if (identity == null)
+                {
+                    continue;
+                }
+
+                var offset = Long.parseLong(socket.recvStr());
+
+                socket.recvStr(); // Label
+
+                socket.recv(); // Payload
+
+                received.add(offset);
+
+                if (offset == expected)
+                {
+                    accepted.add(offset);
+
+                    expected++;
+                }
+
+                if (!dropAck.test(offset))
+                {
+                    socket.sendMore(identity);
+
+                    socket.send(Long.toString(expected));
+                }
+            }
+
+            socket.close();
+        }
+
+        private long retransmits()
+        {
+            return received.size() - received.stream().distinct().count();
+        }
+    }
+
+    private ZContext context;
+
+    private CollectorStub collector;
+
+    private Thread collectorThread;
+
+    private AckedTransport transport;
+
+    @BeforeEach
+    void createContext()
+    {
+        context = new ZContext();
+    }
+
+    @AfterEach
+    void close() throws InterruptedException
+    {
+        if (transport != null)
+        {
+            transport.close();
+        }
+
+        if (collector != null)
+        {
+            collector.running = false;
+
+            collectorThread.join();
+        }
+
+        context.close();
+    }
+
+    private void start(int window, LongPredicate dropAck)
+    {
+        collector = new CollectorStub(context, dropAck);
+
+        var port = collector.socket.bindToRandomPort("tcp://127.0.0.1");
+
+        collectorThread = new Thread(collector, "collector-stub");
+
+        collectorThread.start();
+
+        transport = new AckedTransport(context, "tcp://127.0.0.1:" + port, window, ACK_TIMEOUT, RETRIES);
+
+        transport.reset(0);
+    }
+
+    private boolean sendAll(int records)
+    {
+        for (long offset = 0; offset < records; offset++)
+        {
+            var payload = ByteBuffer.wrap(("record-" + offset).getBytes(StandardCharsets.UTF_8));
+
+            if (!transport.send(offset, 1, "segment", payload))
+            {
+                return false;
+            }
+        }
+        return transport.drain();
+    }
+
+    @Test
+    void everyRecordAcknowledgedWithoutRetransmits()
+    {
+        start(4, offset -> false);
+
+        assertTrue(sendAll(20));
+
+        assertEquals(20, transport.acknowledged());
+
+        assertEquals(0, collector.retransmits());
+
+        assertEquals(20, collector.accepted.size());
+    }
+
+    @Test
+    void lostAcksAreRecoveredByCumulativeAck()
+    {
+        // Acks of even offsets are lost, the ack of the following record covers them
+        start(4, offset -> offset % 2 == 0 && offset < 19);
+
+        assertTrue(sendAll(20));
+
+        assertEquals(20, transport.acknowledged());
+
+        assertEquals(0, collector.retransmits());
+    }
+
+    @Test
+    void windowIsResentWhenAcksStop()
+    {
+        // First six frames get no ack, as if collector stalled: window 0..3 and two of its resent records
+        var frames = new AtomicInteger();
+
+        start(4, offset -> frames.incrementAndGet() <= 6);
+
+        assertTrue(sendAll(10));
+
+        assertEquals(10, transport.acknowledged());
+
+        // Window 0..3 went out again once no ack arrived within ACK_TIMEOUT
+        assertTrue(collector.retransmits() >= 4, "retransmits: " + collector.retransmits());
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), collector.accepted);
+    }
+
+    @Test
+    void lateAckStillCompletesWindow()
+    {
+        // Ack of the first frame comes after ACK_TIMEOUT, stub sleeping holds back every ack behind it too
+        var frames = new AtomicInteger();
+
+        start(4, offset ->
+        {
+            if (frames.incrementAndGet() == 1)
+            {
+                sleep(ACK_TIMEOUT * 2);
+            }
+            return false;
+        });
+
+        assertTrue(sendAll(10));
+
+        assertEquals(10, transport.acknowledged());
+
+        assertTrue(collector.retransmits() > 0, "retransmits: " + collector.retransmits());
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), collector.accepted);
+    }
+
+    @Test
+    void givesUpAfterRetriesAndKeepsLastAcknowledged()
+    {
+        // Collector goes silent after record 2
+        start(4, offset -> offset >= 2);
+
+        assertFalse(sendAll(10));
+
+        assertEquals(2, transport.acknowledged());
+
+        // First transmission and RETRIES resends of the window 2..5
+        assertEquals(4L * RETRIES, collector.retransmits());
+    }
+
+    private static void sleep(long millis)
+    {
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException exception)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package org.example.services;
+
+import io.vertx.core.json.JsonObject;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordBatcherTest
+{
+    private static class SentBatch
+    {
+        private final long offset;
+
+        private final int records;
+
+        private final JsonObject header;
+
+        private final byte[] payload;
+
+        private SentBatch(long offset, int records, String header, ByteBuffer payload)
+        {
+            this.offset = offset;
+
+            this.records = records;
+
+            this.header = new JsonObject(header);
+
+            this.payload = new byte[payload.remaining()];
+
+            payload.get(this.payload);
+        }
+    }
+
+    private final List<SentBatch> sent = new ArrayList<>();
+
+    private boolean accepting = true;
+
+    private final RecordBatcher.Sink sink = (offset, records, header, payload) ->
+    {
+        if (!accepting)
+        {
+            return false;
+        }
+
+        sent.add(new SentBatch(offset, records, header, payload));
+
+        return true;
+    };
+
+    @Test
+    void noneRoundTrip() throws Exception
+    {
+        assertRoundTrip("none");
+    }
+
+    @Test
+    void deflateRoundTrip() throws Exception
+    {
+        assertRoundTrip("deflate");
+    }
+
+    @Test
+    void lz4RoundTrip() throws Exception
+    {
+        assertRoundTrip("lz4");
+    }
+
+    private void assertRoundTrip(String codec) throws Exception
+    {
+        var batcher = new RecordBatcher("segment", 40, sink, 100, 64 * 1024, codec);
+
+        var records = List.of("{\"ip\":\"10.0.0.1\"}", "", "{\"ip\":\"10.0.0.2\",\"result\":{}}".repeat(50));
+
+        for (int i = 0; i < records.size(); i++)
+        {
+            assertTrue(batcher.add(40 + i, payload(records.get(i))));
+        }
+
+        assertTrue(batcher.flush());
+
+        assertEquals(1, sent.size());
+
+        var batch = sent.get(0);
+
+        assertEquals(40, batch.offset);
+
+        assertEquals(3, batch.records);
+
+        assertEquals("segment", batch.header.getString("filename"));
+
+        assertEquals(40, batch.header.getLong("offset"));
+
+        assertEquals(3, batch.header.getInteger("records"));
+
+        assertEquals(codec, batch.header.getString("codec"));
+
+        var raw = decompress(codec, batch.payload, batch.header.getInteger("length"));
+
+        assertEquals(records, split(raw));
+
+        assertEquals(43, batcher.sentOffset());
+    }
+
+    @Test
+    void batchIsSentOnceRecordLimitIsReached()
+    {
+        var batcher = new RecordBatcher("segment", 0, sink, 2, 64 * 1024, "none");
+
+        for (long offset = 0; offset < 5; offset++)
+        {
+            assertTrue(batcher.add(offset, payload("r" + offset)));
+        }
+
+        assertEquals(2, sent.size());
+
+        assertEquals(4, batcher.sentOffset());
+
+        assertTrue(batcher.flush());
+
+        assertEquals(List.of(0L, 2L, 4L), sent.stream().map(batch -> batch.offset).toList());
+
+        assertEquals(5, batcher.sentOffset());
+    }
+
+    @Test
+    void batchIsSentOnceByteLimitIsReached()
+    {
+        var batcher = new RecordBatcher("segment", 0, sink, 100, 20, "none");
+
+        assertTrue(batcher.add(0, payload("0123456789")));
+
+        // Length prefix makes a second record overflow 20 bytes
+        assertTrue(batcher.add(1, payload("0123456789")));
+
+        assertEquals(1, sent.size());
+
+        assertEquals(1, sent.get(0).records);
+    }
+
+    @Test
+    void failedFlushKeepsBatchAndSentOffset() throws Exception
+    {
+        var batcher = new RecordBatcher("segment", 10, sink, 2, 64 * 1024, "lz4");
+
+        assertTrue(batcher.add(10, payload("a")));
+
+        assertTrue(batcher.add(11, payload("b")));
+
+        accepting = false;
+
+        // Full batch couldn't go, walk stops here
+        assertFalse(batcher.add(12, payload("c")));
+
+        assertFalse(batcher.flush());
+
+        assertEquals(10, batcher.sentOffset());
+
+        accepting = true;
+
+        // Same batch goes again, record 12 wasn't taken the first time so it is added after the retry
+        assertTrue(batcher.add(12, payload("c")));
+
+        assertEquals(12, batcher.sentOffset());
+
+        assertTrue(batcher.flush());
+
+        assertEquals(13, batcher.sentOffset());
+
+        assertEquals(2, sent.size());
+
+        assertEquals(List.of("a", "b"), split(decompress("lz4", sent.get(0).payload, sent.get(0).header.getInteger("length"))));
+
+        assertEquals(List.of("c"), split(decompress("lz4", sent.get(1).payload, sent.get(1).header.getInteger("length"))));
+    }
+
+    @Test
+    void emptyFlushSendsNothing()
+    {
+        var batcher = new RecordBatcher("segment", 7, sink, 2, 64 * 1024, "none");
+
+        assertTrue(batcher.flush());
+
+        assertTrue(sent.isEmpty());
+
+        assertEquals(7, batcher.sentOffset());
+    }
+
+    private static ByteBuffer payload(String text)
+    {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //What collector does with a batch: undo the codec, then split the length prefixed records
+    private static byte[] decompress(String codec, byte[] payload, int length) throws Exception
+    {
+        switch (codec)
+        {
+            case "lz4":
+                return LZ4Factory.fastestInstance().fastDecompressor().decompress(payload, length);
+
+            case "deflate":
+                var inflater = new Inflater();
+
+                inflater.setInput(payload);
+
+                var raw = new ByteArrayOutputStream(length);
+
+                var chunk = new byte[8192];
+
+                while (!inflater.finished())
+                {
+                    raw.write(chunk, 0, inflater.inflate(chunk));
+                }
+
+                inflater.end();
+
+                return raw.toByteArray();
+
+            default:
+                return payload;
+        }
+    }
+
+    private static List<String> split(byte[] raw)
+    {
+        var records = new ArrayList<String>();
+
+        var buffer = ByteBuffer.wrap(raw);
+
+        while (buffer.hasRemaining())
+        {
+            var bytes = new byte[buffer.getInt()];
+
+            buffer.get(bytes);
+
+            records.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+
+        return records;
+    }
+}
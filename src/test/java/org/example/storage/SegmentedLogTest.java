@@ -0,0 +1,180 @@
+package org.example.storage;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedLogTest
+{
+    @TempDir
+    Path directory;
+
+    private Vertx vertx;
+
+    @BeforeEach
+    void start()
+    {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void stop() throws Exception
+    {
+        await(vertx.close());
+    }
+
+    private static <T> T await(Future<T> future) throws Exception
+    {
+        return future.toCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+    }
+
+    private SegmentedLog open() throws Exception
+    {
+        return await(SegmentedLog.open(vertx, directory.toString()));
+    }
+
+    private Path segment(long baseOffset)
+    {
+        return Path.of(SegmentedLog.segmentPath(directory.toString(), baseOffset));
+    }
+
+    private Path marker(long baseOffset)
+    {
+        return Path.of(SegmentedLog.sealedPath(segment(baseOffset).toString()));
+    }
+
+    private int records(long baseOffset) throws Exception
+    {
+        return SegmentedLog.countRecords(Buffer.buffer(Files.readAllBytes(segment(baseOffset))));
+    }
+
+    @Test
+    void closedSegmentIsSealedAndNextRunStartsAfterIt() throws Exception
+    {
+        var log = open();
+
+        await(log.append(Buffer.buffer("first")));
+
+        await(log.append(Buffer.buffer("second")));
+
+        await(log.close());
+
+        assertEquals("2", Files.readString(marker(0)));
+
+        log = open();
+
+        await(log.append(Buffer.buffer("third")));
+
+        await(log.close());
+
+        assertEquals("3", Files.readString(marker(2)));
+
+        assertEquals(1, records(2));
+    }
+
+    @Test
+    void emptySegmentIsNotSealedOnClose() throws Exception
+    {
+        await(open().close());
+
+        assertTrue(Files.exists(segment(0)));
+
+        assertFalse(Files.exists(marker(0)));
+    }
+
+    @Test
+    void leftoverWithoutCompleteRecordIsReusedUnsealed() throws Exception
+    {
+        // Crash in the middle of writing the first record of segment 5
+        var log = open();
+
+        await(log.append(Buffer.buffer("a")));
+
+        await(log.append(Buffer.buffer("b")));
+
+        await(log.append(Buffer.buffer("c")));
+
+        await(log.append(Buffer.buffer("d")));
+
+        await(log.append(Buffer.buffer("e")));
+
+        await(log.close());
+
+        Files.write(segment(5), new byte[]{0, 0, 0, 9, 'x'});
+
+        log = open();
+
+        // Segment 5 must stay unsealed while it is being written, FileSender would take it as sent otherwise
+        assertFalse(Files.exists(marker(5)));
+
+        await(log.append(Buffer.buffer("f")));
+
+        await(log.close());
+
+        assertEquals("6", Files.readString(marker(5)));
+
+        assertEquals(1, records(5));
+    }
+
+    @Test
+    void emptySealedSegmentOfEarlierRunIsUnsealedAndReused() throws Exception
+    {
+        // Left by a run that sealed its empty active segment on shutdown
+        Files.createFile(segment(0));
+
+        Files.writeString(marker(0), "0");
+
+        var log = open();
+
+        assertFalse(Files.exists(marker(0)));
+
+        await(log.append(Buffer.buffer("a")));
+
+        await(log.close());
+
+        assertEquals("1", Files.readString(marker(0)));
+
+        assertEquals(1, records(0));
+    }
+
+    @Test
+    void numberingGoesOnAfterEverySegmentWasDeleted() throws Exception
+    {
+        var log = open();
+
+        await(log.append(Buffer.buffer("a")));
+
+        await(log.append(Buffer.buffer("b")));
+
+        await(log.close());
+
+        // FileSender has sent segment 0 and deleted it, its checkpoint is at 2 now
+        Files.delete(segment(0));
+
+        Files.delete(Path.of(SegmentedLog.indexPath(segment(0).toString())));
+
+        Files.delete(marker(0));
+
+        log = open();
+
+        await(log.append(Buffer.buffer("c")));
+
+        await(log.close());
+
+        assertFalse(Files.exists(segment(0)));
+
+        assertEquals("3", Files.readString(marker(2)));
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.util;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Worker pool against virtual threads for a burst of slow blocking probes, as a large discovery sends.
+ Each probe only blocks for probeMillis like a ping waiting on a silent host, so time per burst is bound by how many
+ probes can block at once: 20 worker threads by default, one virtual thread per probe.
+ Virtual mode fails its setup on a JDK older than 21. Run with mvn -Pbenchmark test -Dbenchmark=BlockingExecutorBenchmark
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BlockingExecutorBenchmark
+{
+    @Param({"worker", "virtual"})
+    public String mode;
+
+    @Param({"1000"})
+    public int probes;
+
+    @Param({"20"})
+    public int probeMillis;
+
+    private Vertx vertx;
+
+    private ExecutorService virtualThreads;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        if (mode.equals("virtual"))
+        {
+            virtualThreads = BlockingExecutor.virtualThreadExecutor();
+
+            if (virtualThreads == null)
+            {
+                throw new IllegalStateException("Virtual threads need a JDK 21+ runtime");
+            }
+        }
+
+        vertx = Vertx.vertx();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (virtualThreads != null)
+        {
+            virtualThreads.shutdown();
+        }
+
+        vertx.close().toCompletionStage().toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Object burst() throws Exception
+    {
+        var done = new CompletableFuture<Object>();
+
+        // Submitted from an event loop, like DiscoveryRunner does
+        vertx.runOnContext(v ->
+        {
+            var results = new ArrayList<Future<Integer>>(probes);
+
+            for (int i = 0; i < probes; i++)
+            {
+                var probe = i;
+
+                results.add(BlockingExecutor.execute(vertx, () ->
+                {
+                    Thread.sleep(probeMillis);
+
+                    return probe;
+                }, virtualThreads));
+            }
+
+            Future.all(results).onComplete(result ->
+            {
+                if (result.succeeded())
+                {
+                    done.complete(result.result());
+                }
+                else
+                {
+                    done.completeExceptionally(result.cause());
+                }
+            });
+        });
+
+        return done.get();
+    }
+}